@@ -0,0 +1,135 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * Synthetic copies of a results folder with every output repeated <code>scale</code> times, for
+ * benchmarking the scorers on inputs larger than one WSJ section.
+ * 
+ * Line aligned <code>.test</code>/<code>.out</code> pairs are concatenated, the
+ * <code>overall</code> files get a distinct document id per copy so their keys stay unique, and
+ * each <code>argext_*</code> pipe file is copied as a new document.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ScaledData {
+
+  static final String[] ALIGNED = {"conn.test", "conn.hw.out", "argpos.hw.ep.test",
+      "argpos.hw.ep.out", "exp.hw.ep.test", "exp.hw.ep.out", "implicit.hw.ep.test",
+      "implicit.hw.ep.out"};
+  static final String[] OVERALL = {"overall.test", "overall.hw.ep.out"};
+  static final String[] ARGEXT = {"argext_gs", "argext_hw_ep"};
+
+  private ScaledData() {}
+
+  /**
+   * @return a new temporary folder holding the scaled copies
+   */
+  static File create(File source, int scale) throws IOException {
+    File dir = Files.createTempDirectory("jnle_results_x" + scale).toFile();
+    for (String name : ALIGNED) {
+      repeat(new File(source, name), new File(dir, name), scale);
+    }
+    for (String name : OVERALL) {
+      overall(new File(source, name), new File(dir, name), scale);
+    }
+    for (String name : ARGEXT) {
+      File target = new File(dir, name);
+      if (!target.mkdir()) {
+        throw new IOException("Cannot create " + target);
+      }
+      for (File doc : new File(source, name).listFiles()) {
+        String base = doc.getName().substring(0, doc.getName().lastIndexOf('.'));
+        for (int k = 0; k < scale; ++k) {
+          String copy = k == 0 ? doc.getName() : base + "_" + k + ".pipe";
+          Files.copy(doc.toPath(), new File(target, copy).toPath());
+        }
+      }
+    }
+    return dir;
+  }
+
+  static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static void repeat(File source, File target, int scale) throws IOException {
+    byte[] bytes = Files.readAllBytes(source.toPath());
+    boolean terminated = bytes.length == 0 || bytes[bytes.length - 1] == '\n';
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(target), 1 << 16);
+    try {
+      for (int k = 0; k < scale; ++k) {
+        out.write(bytes);
+        if (!terminated) {
+          out.write('\n');
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Copies <code>dd:span|...</code> lines with the document of copy <code>k</code> renumbered to
+   * <code>k * 100 + dd</code>.
+   */
+  private static void overall(File source, File target, int scale) throws IOException {
+    Writer out =
+        new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), "UTF-8"), 1 << 16);
+    try {
+      for (int k = 0; k < scale; ++k) {
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(new FileInputStream(source), "UTF-8"));
+        try {
+          String line;
+          while ((line = in.readLine()) != null) {
+            int colon = line.indexOf(':');
+            int doc = Integer.parseInt(line.substring(0, colon));
+            out.write(Integer.toString(k * 100 + doc));
+            out.write(line, colon, line.length() - colon);
+            out.write('\n');
+          }
+        } finally {
+          in.close();
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
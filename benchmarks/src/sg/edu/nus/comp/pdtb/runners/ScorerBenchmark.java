@@ -0,0 +1,158 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the scoring passes on the GS + EP outputs of the results folder, and on copies
+ * scaled to 10, 100 and 1000 times as many lines. Throughput and the per-op latency distribution
+ * are measured for every scorer, and {@link #main(String[])} adds the GC profiler for the
+ * allocation rate.
+ * 
+ * <pre>
+ * mvn -Pbenchmarks package
+ * java -jar target/benchmarks.jar -p scale=1,10 -p data=jnle_results
+ * </pre>
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScorerBenchmark {
+
+  @Param({"1", "10", "100", "1000"})
+  public int scale;
+
+  @Param("jnle_results")
+  public String data;
+
+  private File dir;
+  private File[] gsDocs;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    File source = new File(data);
+    if (!source.isDirectory()) {
+      throw new IOException("Results folder " + source.getAbsolutePath() + " not found");
+    }
+    dir = scale == 1 ? source : ScaledData.create(source, scale);
+    gsDocs = new File(dir, "argext_gs").listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith("pipe");
+      }
+    });
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (scale != 1) {
+      ScaledData.delete(dir);
+    }
+  }
+
+  @Benchmark
+  public int[] countConn() throws IOException {
+    return Main.countConn(path("conn.test"), path("conn.hw.out"));
+  }
+
+  @Benchmark
+  public Object countMatches() throws IOException {
+    return Main.countMatches(path("argpos.hw.ep.test"), path("argpos.hw.ep.out"));
+  }
+
+  @Benchmark
+  public Object countExplicit() throws IOException {
+    return Main.countExplicit(file("exp.hw.ep.test"), file("exp.hw.ep.out"));
+  }
+
+  @Benchmark
+  public Object countNonExplicit() throws IOException {
+    return Main.countNonExplicit(file("implicit.hw.ep.test"), file("implicit.hw.ep.out"));
+  }
+
+  @Benchmark
+  public Object countExpOverall() throws IOException {
+    return Main.countExpOverall(file("overall.test"), file("overall.hw.ep.out"));
+  }
+
+  @Benchmark
+  public Object thresholdSweep() throws IOException {
+    return ThresholdSweep.sweep(GoldLabels.parse(file("conn.test"), GoldFormat.LAST_TOKEN),
+        file("conn.hw.out"), null);
+  }
+
+  /**
+   * Reads the gold spans of every document and scores the matching system document against them.
+   */
+  @Benchmark
+  public void countArgExt(Blackhole bh) throws IOException {
+    File prdDir = file("argext_hw_ep");
+    for (File gsDoc : gsDocs) {
+      bh.consume(Main.countArgExt(Main.readArgExtGold(gsDoc), new File(prdDir, gsDoc.getName())));
+    }
+  }
+
+  private String path(String name) {
+    return file(name).getPath();
+  }
+
+  private File file(String name) {
+    return new File(dir, name);
+  }
+
+  /**
+   * Runs the benchmarks with the GC profiler on, taking any other JMH command line option.
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    OptionsBuilder options = new OptionsBuilder();
+    options.parent(commandLine).addProfiler(GCProfiler.class);
+    if (commandLine.getIncludes().isEmpty()) {
+      options.include(ScorerBenchmark.class.getName());
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,88 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * Exact and partial match counts of the argument extractor for one or more documents. Counts of different
+ * documents are merged by addition, so they can be computed in any order.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ArgExtCounts {
+
+  /**
+   * Match bits of a predicted relation, see {@link #add(boolean, boolean, int)}.
+   */
+  static final int ARG1 = 1;
+  static final int ARG2 = 2;
+  static final int PARTIAL_ARG1 = 4;
+  static final int PARTIAL_ARG2 = 8;
+
+  final Counts arg1;
+  final Counts arg2;
+  final Counts both;
+  final Counts partialArg1;
+  final Counts partialArg2;
+  final Counts partialBoth;
+
+  ArgExtCounts() {
+    this(false);
+  }
+
+  /**
+   * @param record whether to keep the outcome of each predicted relation
+   */
+  ArgExtCounts(boolean record) {
+    arg1 = new Counts(record);
+    arg2 = new Counts(record);
+    both = new Counts(record);
+    partialArg1 = new Counts(record);
+    partialArg2 = new Counts(record);
+    partialBoth = new Counts(record);
+  }
+
+  /**
+   * Counts one relation in all six counts.
+   * 
+   * @param match the {@link #ARG1}, {@link #ARG2}, {@link #PARTIAL_ARG1} and {@link #PARTIAL_ARG2}
+   *        bits of the arguments that match
+   */
+  void add(boolean gold, boolean predicted, int match) {
+    boolean matchArg1 = (match & ARG1) != 0;
+    boolean matchArg2 = (match & ARG2) != 0;
+    boolean partialMatchArg1 = (match & PARTIAL_ARG1) != 0;
+    boolean partialMatchArg2 = (match & PARTIAL_ARG2) != 0;
+    arg1.add(gold, predicted, matchArg1);
+    arg2.add(gold, predicted, matchArg2);
+    both.add(gold, predicted, matchArg1 && matchArg2);
+    partialArg1.add(gold, predicted, partialMatchArg1);
+    partialArg2.add(gold, predicted, partialMatchArg2);
+    partialBoth.add(gold, predicted, partialMatchArg1 && partialMatchArg2);
+  }
+
+  ArgExtCounts add(ArgExtCounts other) {
+    arg1.add(other.arg1);
+    arg2.add(other.arg2);
+    both.add(other.both);
+    partialArg1.add(other.partialArg1);
+    partialArg2.add(other.partialArg2);
+    partialBoth.add(other.partialBoth);
+    return this;
+  }
+}
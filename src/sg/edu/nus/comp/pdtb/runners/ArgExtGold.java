@@ -0,0 +1,93 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import sg.edu.nus.comp.pdtb.util.BinaryColumns;
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+
+/**
+ * The gold relations of every <code>wsj_*.pipe</code> document of the argument extractor gold
+ * standard directory, one span index per document, in document name order.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ArgExtGold {
+
+  final String[] names;
+  final SpanIndex[] docs;
+
+  private ArgExtGold(String[] names, SpanIndex[] docs) {
+    this.names = names;
+    this.docs = docs;
+  }
+
+  /**
+   * The gold documents of a directory, sorted by name, compressed or not.
+   */
+  static File[] listDocs(File dir) throws IOException {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return CompressedInput.plainName(name).endsWith("pipe");
+      }
+    });
+    if (files == null) {
+      throw new IOException("Cannot list gold directory " + dir);
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  static ArgExtGold parse(File dir) throws IOException {
+    File[] files = listDocs(dir);
+    String[] names = new String[files.length];
+    SpanIndex[] docs = new SpanIndex[files.length];
+    for (int i = 0; i < files.length; ++i) {
+      names[i] = CompressedInput.plainName(files[i].getName());
+      docs[i] = Main.readArgExtGold(files[i]);
+    }
+    return new ArgExtGold(names, docs);
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(docs.length);
+    for (int i = 0; i < docs.length; ++i) {
+      BinaryColumns.writeString(out, names[i]);
+      docs[i].writeTo(out);
+    }
+  }
+
+  static ArgExtGold readFrom(ByteBuffer in) {
+    int n = in.getInt();
+    String[] names = new String[n];
+    SpanIndex[] docs = new SpanIndex[n];
+    for (int i = 0; i < n; ++i) {
+      names[i] = BinaryColumns.readString(in);
+      docs[i] = SpanIndex.readFrom(in);
+    }
+    return new ArgExtGold(names, docs);
+  }
+}
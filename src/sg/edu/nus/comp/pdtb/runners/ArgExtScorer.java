@@ -0,0 +1,137 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scores argument extractor outputs, one <code>wsj_*.pipe</code> file per document, against the
+ * gold standard directory. Documents are split across a fork-join pool and each gold document is
+ * scored against every system directory before moving on.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ArgExtScorer {
+
+  /**
+   * Documents scored sequentially by one fork-join leaf.
+   */
+  private static final int LEAF_SIZE = 8;
+
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private ArgExtScorer() {}
+
+  /**
+   * Scores each of the system directories against the gold directory.
+   * 
+   * @return the merged counts, in the order of <code>prdDirs</code>
+   * @throws IOException
+   */
+  static ArgExtCounts[] score(File gsDir, File... prdDirs) throws IOException {
+    return score(ArgExtGold.parse(gsDir), prdDirs);
+  }
+
+  /**
+   * Scores each of the system directories against parsed gold documents.
+   * 
+   * @return the merged counts, in the order of <code>prdDirs</code>
+   * @throws IOException
+   */
+  static ArgExtCounts[] score(ArgExtGold gold, File... prdDirs) throws IOException {
+    try {
+      return POOL.invoke(new DocumentTask(gold, prdDirs, 0, gold.docs.length));
+    } catch (ScoringException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static final class DocumentTask extends RecursiveTask<ArgExtCounts[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArgExtGold gold;
+    private final File[] prdDirs;
+    private final int from;
+    private final int to;
+
+    DocumentTask(ArgExtGold gold, File[] prdDirs, int from, int to) {
+      this.gold = gold;
+      this.prdDirs = prdDirs;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected ArgExtCounts[] compute() {
+      if (to - from <= LEAF_SIZE) {
+        ArgExtCounts[] counts = newCounts(prdDirs.length);
+        try {
+          for (int i = from; i < to; ++i) {
+            for (int d = 0; d < prdDirs.length; ++d) {
+              File prdFile = new File(prdDirs[d], gold.names[i]);
+              counts[d].add(Main.countArgExt(gold.docs[i], prdFile));
+            }
+          }
+        } catch (IOException e) {
+          throw new ScoringException(e);
+        }
+        return counts;
+      }
+      int mid = (from + to) >>> 1;
+      DocumentTask left = new DocumentTask(gold, prdDirs, from, mid);
+      left.fork();
+      ArgExtCounts[] right = new DocumentTask(gold, prdDirs, mid, to).compute();
+      // left first, so the outcomes stay in document order
+      ArgExtCounts[] counts = left.join();
+      for (int d = 0; d < counts.length; ++d) {
+        counts[d].add(right[d]);
+      }
+      return counts;
+    }
+  }
+
+  private static ArgExtCounts[] newCounts(int n) {
+    ArgExtCounts[] counts = new ArgExtCounts[n];
+    for (int i = 0; i < n; ++i) {
+      counts[i] = new ArgExtCounts();
+    }
+    return counts;
+  }
+
+  /**
+   * Carries an I/O failure out of a fork-join task.
+   */
+  private static final class ScoringException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    ScoringException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Percentile bootstrap confidence intervals of F1. Each resample draws as many instances as were
+ * scored, with replacement, and sums their outcome flags into primitive counters.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class Bootstrap {
+
+  /**
+   * Resamples of a bootstrap unless set otherwise.
+   */
+  static final int RESAMPLES = 10000;
+
+  private Bootstrap() {}
+
+  /**
+   * Returns the <code>{low, high}</code> bounds, in percent, of the central <code>level</code>
+   * interval of F1 over <code>resamples</code> resamples of <code>outcomes</code>.
+   */
+  static double[] f1Interval(Outcomes outcomes, int resamples, double level, long seed) {
+    final byte[] flags = outcomes.toArray();
+    final double[] f1 = new double[resamples];
+    ParallelResampling.run(resamples, seed, new ParallelResampling.Chunk() {
+      @Override
+      public void run(int from, int to, SplittableRandom rng) {
+        for (int r = from; r < to; ++r) {
+          f1[r] = resampleF1(flags, rng);
+        }
+      }
+    });
+
+    Arrays.sort(f1);
+    double tail = (1 - level) / 2;
+    int low = (int) Math.floor(tail * resamples);
+    int high = (int) Math.ceil((1 - tail) * resamples) - 1;
+    return new double[] {f1[Math.max(0, low)], f1[Math.min(resamples - 1, high)]};
+  }
+
+  private static double resampleF1(byte[] flags, SplittableRandom rng) {
+    int n = flags.length;
+    int gold = 0, predicted = 0, correct = 0;
+    for (int i = 0; i < n; ++i) {
+      int flag = flags[rng.nextInt(n)];
+      gold += flag & Outcomes.GOLD;
+      predicted += (flag & Outcomes.PREDICTED) >> 1;
+      correct += (flag & Outcomes.CORRECT) >> 2;
+    }
+    return Counts.f1(gold, predicted, correct);
+  }
+}
@@ -0,0 +1,99 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * Gold, predicted and correct instance counts of one scoring pass, the input of precision, recall
+ * and F1. Counts of separate passes are merged by addition.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class Counts {
+
+  int gold;
+  int predicted;
+  int correct;
+  /**
+   * The outcome of each counted instance, or null when the counts were created without recording.
+   */
+  Outcomes outcomes;
+
+  Counts() {}
+
+  /**
+   * @param record whether to keep the outcome of each instance counted with
+   *        {@link #add(boolean, boolean, boolean)}
+   */
+  Counts(boolean record) {
+    if (record) {
+      outcomes = new Outcomes();
+    }
+  }
+
+  Counts(int gold, int predicted, int correct) {
+    this.gold = gold;
+    this.predicted = predicted;
+    this.correct = correct;
+  }
+
+  /**
+   * Counts one instance.
+   */
+  void add(boolean gold, boolean predicted, boolean correct) {
+    if (gold) {
+      ++this.gold;
+    }
+    if (predicted) {
+      ++this.predicted;
+    }
+    if (correct) {
+      ++this.correct;
+    }
+    if (outcomes != null) {
+      outcomes.add((gold ? Outcomes.GOLD : 0) | (predicted ? Outcomes.PREDICTED : 0)
+          | (correct ? Outcomes.CORRECT : 0));
+    }
+  }
+
+  Counts add(Counts other) {
+    gold += other.gold;
+    predicted += other.predicted;
+    correct += other.correct;
+    if (other.outcomes != null) {
+      if (outcomes == null) {
+        outcomes = new Outcomes();
+      }
+      outcomes.append(other.outcomes);
+    }
+    return this;
+  }
+
+  /**
+   * F1 in percent of the given totals, <code>2 * correct / (gold + predicted)</code>, which is 0 when
+   * there are no instances.
+   */
+  static double f1(int gold, int predicted, int correct) {
+    return gold + predicted == 0 ? 0 : 200.0 * correct / (gold + predicted);
+  }
+
+  @Override
+  public String toString() {
+    return "gold=" + gold + " predicted=" + predicted + " correct=" + correct;
+  }
+}
@@ -0,0 +1,248 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * Attributes the errors of the explicit relations of an end-to-end run to the pipeline stage
+ * where they first appear, connective, argument position, argument extraction or explicit sense,
+ * with the non-explicit errors as a stage of their own.
+ * 
+ * The stages are joined on the document and connective span of each relation. The argument
+ * extractor output is indexed in a {@link SpanIndex}, the argument position lines, written in
+ * order of document and connective start, are matched to it by sorting its relations the same
+ * way, and each relation of the overall output is then looked up in it and in the gold standard,
+ * in a single pass. Everything kept per relation is an int or a bit.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ErrorAttribution {
+
+  enum Stage {
+    CONNECTIVE("Connective"), ARGUMENT_POSITION("Argument position"), ARGUMENT_EXTRACTION(
+        "Argument extraction"), EXPLICIT_SENSE("Explicit sense"), NON_EXPLICIT("Non-explicit");
+
+    final String label;
+
+    private Stage(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final String SENSE_SEPARATOR = MappedLineReader.byteView("£");
+  /**
+   * Marks a gold relation whose first prediction is correct.
+   */
+  private static final byte CORRECT = -1;
+  /**
+   * Marks a gold relation without a prediction.
+   */
+  private static final byte UNMATCHED = -2;
+
+  /**
+   * Wrong predicted relations by stage.
+   */
+  final int[] wrong = new int[Stage.values().length];
+  /**
+   * Missed gold relations by stage.
+   */
+  final int[] missed = new int[Stage.values().length];
+
+  /**
+   * @param argposGold the gold labels of the argument position classifier output
+   * @param argposPrd the argument position classifier output
+   * @param argExtDir the argument extractor output, one pipe file per document
+   * @param overallPrd the explicit relations output by the whole pipeline
+   * @param connectives the gold and predicted connectives of the setting, predicted connectives
+   *        without a relation in <code>overallPrd</code> are wrong at the connective stage
+   * @param nonExplicit the non-explicit totals of the setting
+   */
+  static ErrorAttribution attribute(OverallGold gold, GoldLabels argposGold, File argposPrd,
+      File argExtDir, File overallPrd, Counts connectives, Counts nonExplicit) throws IOException {
+    ErrorAttribution attribution = new ErrorAttribution();
+    SpanIndex extracted = new SpanIndex(3);
+    // gold relations whose connective reached the argument extractor
+    BitSet reached = new BitSet(gold.relations.size());
+    long[] order = readArgExt(argExtDir, extracted, gold, reached);
+    BitSet argposWrong = readArgPos(argposGold, argposPrd, order);
+
+    byte[] firstStage = new byte[gold.relations.size()];
+    Arrays.fill(firstStage, UNMATCHED);
+    int predicted = 0;
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    TokenCursor column = new TokenCursor();
+    TokenCursor sense = new TokenCursor();
+    MappedLineReader reader = null;
+    try {
+      reader = new MappedLineReader(overallPrd);
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        ++predicted;
+        Main.parseRelation(rel, line, overallPrd, predicted);
+        int id = gold.relations.get(rel);
+        int stage;
+        if (id < 0) {
+          stage = Stage.CONNECTIVE.ordinal();
+        } else if (gold.relations.spanEquals(id, 1, rel) && gold.relations.spanEquals(id, 2, rel)) {
+          OverallGold.senseColumn(column, line, rel);
+          sense.field(column, SENSE_SEPARATOR, 0);
+          boolean correct = gold.matches(id, gold.senses.get(sense));
+          stage = correct ? CORRECT : Stage.EXPLICIT_SENSE.ordinal();
+        } else {
+          int prdId = extracted.get(rel);
+          stage = prdId >= 0 && argposWrong.get(prdId) ? Stage.ARGUMENT_POSITION.ordinal()
+              : Stage.ARGUMENT_EXTRACTION.ordinal();
+        }
+        if (stage != CORRECT) {
+          ++attribution.wrong[stage];
+        }
+        if (id >= 0 && firstStage[id] == UNMATCHED) {
+          firstStage[id] = (byte) stage;
+        }
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+
+    for (int id = 0; id < firstStage.length; ++id) {
+      if (firstStage[id] >= 0) {
+        ++attribution.missed[firstStage[id]];
+      } else if (firstStage[id] == UNMATCHED) {
+        // the explicit classifier drops a few of the relations it is given
+        Stage stage = reached.get(id) ? Stage.EXPLICIT_SENSE : Stage.CONNECTIVE;
+        ++attribution.missed[stage.ordinal()];
+      }
+    }
+    attribution.wrong[Stage.CONNECTIVE.ordinal()] += Math.max(0, connectives.predicted - predicted);
+    attribution.wrong[Stage.NON_EXPLICIT.ordinal()] = nonExplicit.predicted - nonExplicit.correct;
+    attribution.missed[Stage.NON_EXPLICIT.ordinal()] = nonExplicit.gold - nonExplicit.correct;
+    return attribution;
+  }
+
+  /**
+   * Indexes the relations of every document of an argument extractor output, marking the gold
+   * relations whose connective is among them.
+   * 
+   * @return the relation ids of the lines in order of document and connective start, each in the
+   *         low 32 bits, a line repeating the connective of an earlier one has the same id
+   */
+  private static long[] readArgExt(File dir, SpanIndex extracted, OverallGold gold, BitSet reached)
+      throws IOException {
+    long[] order = new long[1024];
+    int n = 0;
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    for (File file : ArgExtGold.listDocs(dir)) {
+      int doc = docNumber(CompressedInput.plainName(file.getName()));
+      int from = n;
+      MappedLineReader reader = null;
+      try {
+        reader = new MappedLineReader(file);
+        CharSequence line;
+        long lines = 0;
+        while ((line = reader.readLine()) != null) {
+          Main.parseRelation(rel, line, file, ++lines).setDoc(doc);
+          int id = extracted.put(rel);
+          if (n == order.length) {
+            order = Arrays.copyOf(order, 2 * n);
+          }
+          order[n++] = (long) rel.spanStart(0) << 32 | id;
+          int goldId = gold.relations.get(rel);
+          if (goldId >= 0) {
+            reached.set(goldId);
+          }
+        }
+      } finally {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+      Arrays.sort(order, from, n);
+    }
+    return Arrays.copyOf(order, n);
+  }
+
+  /**
+   * Reads the argument position output, whose lines follow <code>order</code>.
+   * 
+   * @return the relation ids whose argument position is wrong
+   */
+  private static BitSet readArgPos(GoldLabels gold, File prdFile, long[] order)
+      throws IOException {
+    int relations = order.length;
+    if (gold.size != relations) {
+      throw new IOException(prdFile + " has " + gold.size + " gold lines for " + relations
+          + " extracted relations");
+    }
+    BitSet wrong = new BitSet(relations);
+    MappedLineReader reader = gold.openAligned(prdFile);
+    try {
+      TokenCursor token = new TokenCursor();
+      for (int i = 0; i < relations; ++i) {
+        if (!gold.matches(i, gold.labels.get(token.last(gold.nextAligned(reader, prdFile, i))))) {
+          wrong.set((int) order[i]);
+        }
+      }
+      gold.endAligned(reader, prdFile);
+    } finally {
+      reader.close();
+    }
+    return wrong;
+  }
+
+  /**
+   * The document number used by the overall files, the last two digits of the WSJ file, 0 for
+   * <code>wsj_2300.pipe</code>.
+   */
+  static int docNumber(String name) {
+    int end = name.length();
+    while (end > 0 && !Character.isDigit(name.charAt(end - 1))) {
+      --end;
+    }
+    if (end < 2) {
+      throw new IllegalArgumentException("No document number in " + name);
+    }
+    return Integer.parseInt(name.substring(end - 2, end));
+  }
+
+  void print(String title) {
+    System.out.println(title);
+    System.out.println("___________________________________");
+    System.out.println(String.format("%-21s %7s %7s", "Stage", "Wrong", "Missed"));
+    int totalWrong = 0;
+    int totalMissed = 0;
+    for (Stage stage : Stage.values()) {
+      System.out.println(String.format("%-21s %7d %7d", stage.label, wrong[stage.ordinal()],
+          missed[stage.ordinal()]));
+      totalWrong += wrong[stage.ordinal()];
+      totalMissed += missed[stage.ordinal()];
+    }
+    System.out.println(String.format("%-21s %7d %7d", "Total", totalWrong, totalMissed));
+  }
+}
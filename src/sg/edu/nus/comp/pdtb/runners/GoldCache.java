@@ -0,0 +1,323 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import sg.edu.nus.comp.pdtb.util.BinaryColumns;
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+
+/**
+ * Binary columnar cache of parsed gold standard files, kept in a <code>.gold-cache</code> folder
+ * next to them, or under the temporary-file folder, <code>java.io.tmpdir</code>, when their folder
+ * is read-only. A cache file records the name, length, modification time and CRC32 of each source
+ * it was parsed from. It is used as long as every source has the same length and time, or failing
+ * that the same checksum, in which case the new length and time are recorded, and is rebuilt
+ * otherwise. Cache files are memory-mapped and their int
+ * columns copied in bulk, so loading does no text parsing.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class GoldCache {
+
+  static final String DIR = ".gold-cache";
+
+  private static final int MAGIC = 0x4A4E4C47;
+  /**
+   * Bumped whenever the layout of a cached structure changes.
+   */
+  private static final int VERSION = 4;
+
+  /**
+   * Whether gold standard files are loaded through the cache, set with <code>--no-cache</code>.
+   */
+  static boolean enabled = true;
+
+  /**
+   * Cache folders that could not be written, each reported once.
+   */
+  private static final Set<File> UNWRITABLE =
+      Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+  /**
+   * A cacheable gold structure.
+   */
+  private interface Entry<T> {
+
+    T parse() throws IOException;
+
+    void write(DataOutputStream out, T value) throws IOException;
+
+    T read(ByteBuffer in);
+  }
+
+  private GoldCache() {}
+
+  static GoldLabels labels(final File source, final GoldFormat format) throws IOException {
+    return load(source.getAbsoluteFile().getParentFile(), source.getName() + "."
+        + format.name().toLowerCase(), new File[] {CompressedInput.resolve(source)},
+        new Entry<GoldLabels>() {
+          @Override
+          public GoldLabels parse() throws IOException {
+            return GoldLabels.parse(source, format);
+          }
+
+          @Override
+          public void write(DataOutputStream out, GoldLabels value) throws IOException {
+            value.writeTo(out);
+          }
+
+          @Override
+          public GoldLabels read(ByteBuffer in) {
+            return GoldLabels.readFrom(in);
+          }
+        });
+  }
+
+  static OverallGold overall(final File source) throws IOException {
+    return load(source.getAbsoluteFile().getParentFile(), source.getName(),
+        new File[] {CompressedInput.resolve(source)},
+        new Entry<OverallGold>() {
+          @Override
+          public OverallGold parse() throws IOException {
+            return OverallGold.parse(source);
+          }
+
+          @Override
+          public void write(DataOutputStream out, OverallGold value) throws IOException {
+            value.writeTo(out);
+          }
+
+          @Override
+          public OverallGold read(ByteBuffer in) {
+            return OverallGold.readFrom(in);
+          }
+        });
+  }
+
+  static ArgExtGold argExt(final File dir) throws IOException {
+    return load(dir.getAbsoluteFile().getParentFile(), dir.getName(), ArgExtGold.listDocs(dir),
+        new Entry<ArgExtGold>() {
+          @Override
+          public ArgExtGold parse() throws IOException {
+            return ArgExtGold.parse(dir);
+          }
+
+          @Override
+          public void write(DataOutputStream out, ArgExtGold value) throws IOException {
+            value.writeTo(out);
+          }
+
+          @Override
+          public ArgExtGold read(ByteBuffer in) {
+            return ArgExtGold.readFrom(in);
+          }
+        });
+  }
+
+  /**
+   * Reads <code>name</code> from the cache in <code>dir</code> if it is up to date with
+   * <code>sources</code>, parses and caches it otherwise. A cache that cannot be written only
+   * costs the parsing on the next run.
+   */
+  private static <T> T load(File dir, String name, File[] sources, Entry<T> entry)
+      throws IOException {
+    if (!enabled) {
+      return entry.parse();
+    }
+    File cache = new File(folder(dir), name + ".bin");
+    if (cache.isFile()) {
+      try {
+        T value = read(cache, sources, entry);
+        if (value != null) {
+          return value;
+        }
+      } catch (IOException e) {
+        System.err.println("Rebuilding unreadable gold cache " + cache + ": " + e.getMessage());
+      } catch (RuntimeException e) {
+        System.err.println("Rebuilding corrupt gold cache " + cache + ": " + e);
+      }
+    }
+    T value = entry.parse();
+    try {
+      write(cache, sources, entry, value);
+    } catch (IOException e) {
+      unwritable(cache, e.getMessage());
+    } catch (RuntimeException e) {
+      unwritable(cache, e.toString());
+    }
+    return value;
+  }
+
+  /**
+   * The cache folder of the gold files in <code>dir</code>: <code>.gold-cache</code> in it when it
+   * can be written, a folder of its own under the temporary-file folder otherwise.
+   */
+  static File folder(File dir) {
+    File folder = new File(dir, DIR);
+    if (folder.isDirectory() ? folder.canWrite() : !folder.exists() && dir.canWrite()) {
+      return folder;
+    }
+    String path = dir.getAbsolutePath();
+    return new File(new File(System.getProperty("java.io.tmpdir"), DIR), dir.getName() + "-"
+        + Integer.toHexString(path.hashCode()));
+  }
+
+  private static void unwritable(File cache, String reason) {
+    if (UNWRITABLE.add(cache.getParentFile())) {
+      System.err.println("Cannot write gold caches to " + cache.getParent() + ", parsing the gold "
+          + "files every run: " + reason);
+    }
+  }
+
+  /**
+   * @return the cached value, or null when the cache is stale
+   */
+  private static <T> T read(File cache, File[] sources, Entry<T> entry) throws IOException {
+    ByteBuffer in;
+    RandomAccessFile file = new RandomAccessFile(cache, "r");
+    try {
+      // the mapping stays valid after the channel is closed
+      in = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    } finally {
+      file.close();
+    }
+    if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != sources.length) {
+      return null;
+    }
+    // header offsets of the sources that were checksummed, -1 for the others
+    long[] touched = new long[sources.length];
+    boolean checksummed = false;
+    for (int i = 0; i < sources.length; ++i) {
+      String path = BinaryColumns.readString(in);
+      touched[i] = in.position();
+      long length = in.getLong();
+      long modified = in.getLong();
+      long checksum = in.getLong();
+      if (!path.equals(sources[i].getName())) {
+        return null;
+      }
+      if (length == sources[i].length() && modified == sources[i].lastModified()) {
+        touched[i] = -1;
+      } else if (checksum == checksum(sources[i])) {
+        checksummed = true;
+      } else {
+        return null;
+      }
+    }
+    T value = entry.read(in);
+    if (checksummed) {
+      try {
+        touch(cache, sources, touched);
+      } catch (IOException e) {
+        System.err.println("Cannot update gold cache " + cache + ": " + e.getMessage());
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Records the current length and time of the sources at their header <code>offsets</code>, -1
+   * for none, so that the next load does not checksum them again. The fields are rewritten in
+   * place: a reader that sees them half written falls back to the checksum, which is unchanged.
+   */
+  private static void touch(File cache, File[] sources, long[] offsets) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(cache, "rw");
+    try {
+      for (int i = 0; i < sources.length; ++i) {
+        if (offsets[i] >= 0) {
+          file.seek(offsets[i]);
+          file.writeLong(sources[i].length());
+          file.writeLong(sources[i].lastModified());
+        }
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Writes the cache to a temporary file moved into place, so readers never see a partial cache.
+   */
+  private static <T> void write(File cache, File[] sources, Entry<T> entry, T value)
+      throws IOException {
+    File dir = cache.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    File tmp = File.createTempFile(cache.getName(), ".tmp", dir);
+    try {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sources.length);
+        for (File source : sources) {
+          BinaryColumns.writeString(out, source.getName());
+          out.writeLong(source.length());
+          out.writeLong(source.lastModified());
+          out.writeLong(checksum(source));
+        }
+        entry.write(out, value);
+      } finally {
+        out.close();
+      }
+      try {
+        Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  private static long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[1 << 16];
+    InputStream in = new FileInputStream(file);
+    try {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        crc.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return crc.getValue();
+  }
+}
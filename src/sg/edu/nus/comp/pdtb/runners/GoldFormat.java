@@ -0,0 +1,40 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * How the gold label of each line of a line-aligned gold file is written.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+enum GoldFormat {
+  /**
+   * The last token, alternative senses followed by <code>£</code>, as in <code>exp.*.test</code>.
+   * A token without it is a connective with no gold sense.
+   */
+  EXPLICIT,
+  /**
+   * One or two senses before an optional <code>%%%</code>, as in <code>implicit.*.test</code>.
+   */
+  NON_EXPLICIT,
+  /**
+   * The last token, as in <code>conn.test</code> and <code>argpos.*.test</code>.
+   */
+  LAST_TOKEN
+}
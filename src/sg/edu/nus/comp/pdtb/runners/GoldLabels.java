@@ -0,0 +1,245 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import sg.edu.nus.comp.pdtb.util.BinaryColumns;
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+import sg.edu.nus.comp.pdtb.util.LabelTable;
+import sg.edu.nus.comp.pdtb.util.LinePipeline;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * The gold labels of a line-aligned gold file, parsed into columns: the interned id of the first
+ * gold label of each line, -1 when absent, the set of all its gold labels as one bit per id, and
+ * the lines that are listed without being gold instances. Labels are kept as they appear in a
+ * mapped line.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class GoldLabels {
+
+  private static final String SENSE_SEPARATOR = MappedLineReader.byteView("£");
+
+  final LabelTable labels;
+  final int size;
+  final byte[] first;
+  /**
+   * The {@link LabelTable#bit(int) label bits} of the gold labels of each line, the first one and
+   * its alternatives.
+   */
+  final long[] gold;
+  /**
+   * Lines that are not gold instances, such as connectives without an explicit sense.
+   */
+  final BitSet unannotated;
+
+  private GoldLabels(LabelTable labels, int size, byte[] first, long[] gold, BitSet unannotated) {
+    this.labels = labels;
+    this.size = size;
+    this.first = first;
+    this.gold = gold;
+    this.unannotated = unannotated;
+  }
+
+  static GoldLabels parse(File file, GoldFormat format) throws IOException {
+    LabelTable labels = new LabelTable();
+    byte[] first = new byte[1024];
+    long[] gold = new long[1024];
+    BitSet unannotated = new BitSet();
+    int size = 0;
+    StageMetrics.Probe probe = StageMetrics.start("parseGold", file);
+    MappedLineReader reader = null;
+    try {
+      reader = new MappedLineReader(file);
+      TokenCursor token = new TokenCursor();
+      TokenCursor sense = new TokenCursor();
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        if (size == first.length) {
+          first = Arrays.copyOf(first, 2 * size);
+          gold = Arrays.copyOf(gold, 2 * size);
+        }
+        int a = -1;
+        int b = -1;
+        switch (format) {
+          case EXPLICIT:
+            token.last(line);
+            // connectives without a gold sense are listed with the gold ones, but are not relations
+            if (TokenCursor.indexOf(line, SENSE_SEPARATOR, token.start(), token.end()) < 0) {
+              unannotated.set(size);
+            }
+            a = sense.field(token, SENSE_SEPARATOR, 0) ? labels.intern(sense) : -1;
+            b = sense.field(token, SENSE_SEPARATOR, 1) ? labels.intern(sense) : -1;
+            break;
+          case NON_EXPLICIT:
+            int cut = TokenCursor.indexOf(line, "%%%", 0, line.length());
+            token.first(line, 0, cut < 0 ? line.length() : cut);
+            a = labels.intern(token);
+            b = token.next().isEmpty() ? -1 : labels.intern(token);
+            break;
+          default:
+            a = labels.intern(token.last(line));
+        }
+        first[size] = (byte) a;
+        gold[size] = LabelTable.bit(a) | LabelTable.bit(b);
+        ++size;
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+      probe.end(reader == null ? 0 : reader.size(), size);
+    }
+    checkLabelCount(file, labels);
+    return new GoldLabels(labels, size, first, gold, unannotated);
+  }
+
+  /**
+   * Opens a prediction file that is scored line by line against these labels. Its lines are
+   * counted first, so a truncated or misaligned file fails before anything is scored. The lines of
+   * a compressed file are not counted, which would inflate it twice, and are checked while it is
+   * read instead: read it with {@link #nextAligned(MappedLineReader, File, int)} and
+   * {@link #endAligned(MappedLineReader, File)}.
+   * 
+   * @throws IOException if the file does not have one line per gold line
+   */
+  MappedLineReader openAligned(File prdFile) throws IOException {
+    checkAligned(prdFile);
+    return new MappedLineReader(prdFile);
+  }
+
+  /**
+   * Checks that a prediction file has one line per gold line, see {@link #openAligned(File)}.
+   * 
+   * @return the number of lines of the file, or -1 for a compressed file, whose lines the caller
+   *         checks while reading it with {@link #checkLines(File, long)}
+   */
+  long checkAligned(File prdFile) throws IOException {
+    if (CompressedInput.isCompressed(prdFile)) {
+      return -1;
+    }
+    long lines = MappedLineReader.countLines(prdFile);
+    checkLines(prdFile, lines);
+    return lines;
+  }
+
+  /**
+   * Fails unless a prediction file has <code>lines</code> lines, one per gold line.
+   */
+  void checkLines(File prdFile, long lines) throws IOException {
+    if (lines != size) {
+      throw new IOException(prdFile + " has " + lines + " lines, its gold standard has " + size);
+    }
+  }
+
+  /**
+   * Fails when a batch of a prediction file scored on a {@link LinePipeline} runs past the gold
+   * lines, which only a compressed file can do, see {@link #checkAligned(File)}.
+   */
+  void checkBatch(File prdFile, LinePipeline.Batch batch) throws IOException {
+    if (batch.first() + batch.size() > size) {
+      throw new IOException(prdFile + " has more lines than its gold standard, " + size);
+    }
+  }
+
+  /**
+   * Reads line <code>line</code>, counted from 0, of a file opened with
+   * {@link #openAligned(File)}.
+   * 
+   * @throws IOException if the file ends before its gold standard
+   */
+  CharSequence nextAligned(MappedLineReader reader, File prdFile, int line) throws IOException {
+    CharSequence next = reader.readLine();
+    if (next == null) {
+      checkLines(prdFile, line);
+    }
+    return next;
+  }
+
+  /**
+   * Checks that a file opened with {@link #openAligned(File)} ends after its last gold line.
+   */
+  void endAligned(MappedLineReader reader, File prdFile) throws IOException {
+    if (reader.readLine() != null) {
+      throw new IOException(prdFile + " has more lines than its gold standard, " + size);
+    }
+  }
+
+  /**
+   * Whether line <code>line</code> is a gold instance.
+   */
+  boolean isGold(int line) {
+    return !unannotated.get(line);
+  }
+
+  /**
+   * Whether <code>label</code>, an id of {@link #labels} or -1, is a gold label of the line.
+   */
+  boolean matches(int line, int label) {
+    return (gold[line] & LabelTable.bit(label)) != 0;
+  }
+
+  /**
+   * The id of the alternative gold label of the line, -1 when it has none.
+   */
+  int second(int line) {
+    long rest = gold[line] & ~LabelTable.bit(first[line]);
+    return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+  }
+
+  /**
+   * Gold labels are kept as the bits of a <code>long</code>, so a gold file can have at most
+   * {@link LabelTable#MAX_SET_LABELS} distinct labels. Those of the tables have fewer than 20.
+   */
+  static void checkLabelCount(File file, LabelTable labels) throws IOException {
+    if (labels.size() > LabelTable.MAX_SET_LABELS) {
+      throw new IOException(file + " has " + labels.size() + " distinct labels, at most "
+          + LabelTable.MAX_SET_LABELS + " are supported");
+    }
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    labels.writeTo(out);
+    BinaryColumns.writeBytes(out, first, size);
+    BinaryColumns.writeLongs(out, gold, size);
+    long[] words = unannotated.toLongArray();
+    out.writeInt(words.length);
+    for (long word : words) {
+      out.writeLong(word);
+    }
+  }
+
+  static GoldLabels readFrom(ByteBuffer in) {
+    LabelTable labels = LabelTable.readFrom(in);
+    byte[] first = BinaryColumns.readBytes(in);
+    long[] gold = BinaryColumns.readLongs(in);
+    long[] words = new long[in.getInt()];
+    in.asLongBuffer().get(words);
+    in.position(in.position() + 8 * words.length);
+    return new GoldLabels(labels, first.length, first, gold, BitSet.valueOf(words));
+  }
+}
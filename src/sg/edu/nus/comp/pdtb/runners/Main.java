@@ -16,13 +16,40 @@ package sg.edu.nus.comp.pdtb.runners;
  * not, see http://www.gnu.org/licenses/.
  */
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+import sg.edu.nus.comp.pdtb.util.LinePipeline;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
 
 /**
  * Methods for reproducing Lin et al., JNLE 2014 paper results without using the PDTB corpus.
@@ -33,55 +60,781 @@ import java.util.HashMap;
 public class Main {
 
   private static String RESULT_DIR = "jnle_results/";
-  private static final String ENCODING = "UTF-8";
+  /**
+   * The <code>£</code> separating alternative gold senses, as it appears in a mapped line.
+   */
+  private static final String SENSE_SEPARATOR = MappedLineReader.byteView("£");
+  /**
+   * Results folders of the runs scored, the first one is {@link #RESULT_DIR}. Gold standard files
+   * are read from {@link #RESULT_DIR} and shared by every run, except for {@link #SHARDS}.
+   */
+  private static List<String> RUNS = new ArrayList<String>();
+  /**
+   * Results folders of other parts of the corpus, such as the sections of a cross-validation,
+   * each with its own gold standard files.
+   */
+  private static final Set<String> SHARDS =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  /**
+   * Whether the scorers keep the outcome of each instance, needed to resample the instances.
+   */
+  private static boolean RECORD_OUTCOMES = false;
+  /**
+   * Bytes of lines the out-of-core scorers of Tables 5 and 9 buffer before spilling a sorted run,
+   * set in megabytes with <code>--external</code>, 0 to score with the gold standard in memory.
+   */
+  private static long EXTERNAL_BUDGET = 0;
+  /**
+   * Workers scoring the batches of lines of a prediction file while it is read, set with
+   * <code>--pipeline</code>.
+   */
+  private static int PIPELINE_WORKERS = 1;
+  /**
+   * The scores computed and printed, those of the tables and settings selected with
+   * <code>--tables</code> and <code>--settings</code>. Shards, partial counts and the scoring
+   * server always cover every score.
+   */
+  private static Set<Score> PLAN = EnumSet.allOf(Score.class);
+  /**
+   * Bootstrap resamples behind the confidence interval of each F1, 0 for point estimates only.
+   */
+  private static int RESAMPLES = 0;
+  private static int PERMUTATIONS = RandomizationTest.PERMUTATIONS;
+  private static long SEED = 1;
+  private static final double CONFIDENCE = 0.95;
+
+  /**
+   * The settings of the paper tables: gold standard parses without error propagation, with error
+   * propagation, and automatic parses with error propagation.
+   */
+  enum Setting {
+    GS, EP, AUTO
+  }
+
+  /**
+   * Every number reported in the paper tables. Each one is scored independently of the others, so
+   * they can be computed concurrently and printed once all of them are done.
+   */
+  enum Score implements Callable<double[]> {
+    CONN_GS(2, Setting.GS, "Table 2  GS"), CONN_AUTO(2, Setting.AUTO, "Table 2  Auto"),
+    ARG_POS_GS(3, Setting.GS, "Table 3  GS + no EP"),
+    ARG_POS_EP(3, Setting.EP, "Table 3  GS + EP"),
+    ARG_POS_AUTO(3, Setting.AUTO, "Table 3  Auto + EP"),
+    ARG_EXT_PART_GS(5, Setting.GS, "Table 5  Partial GS + no EP"),
+    ARG_EXT_PART_EP(5, Setting.EP, "Table 5  Partial GS + EP"),
+    ARG_EXT_PART_AUTO(5, Setting.AUTO, "Table 5  Partial Auto + EP"),
+    ARG_EXT_GS(5, Setting.GS, "Table 5  Exact GS + no EP"),
+    ARG_EXT_EP(5, Setting.EP, "Table 5  Exact GS + EP"),
+    ARG_EXT_AUTO(5, Setting.AUTO, "Table 5  Exact Auto + EP"),
+    EXP_GS(6, Setting.GS, "Table 6  GS + no EP"), EXP_EP(6, Setting.EP, "Table 6  GS + EP"),
+    EXP_AUTO(6, Setting.AUTO, "Table 6  Auto + EP"),
+    NON_EXP_GS(7, Setting.GS, "Table 7  GS + no EP"),
+    NON_EXP_EP(7, Setting.EP, "Table 7  GS + EP"),
+    NON_EXP_AUTO(7, Setting.AUTO, "Table 7  Auto + EP"),
+    OVERALL_EP(9, Setting.EP, "Table 9  Exact GS + EP"),
+    OVERALL_AUTO(9, Setting.AUTO, "Table 9  Exact Auto + EP");
+
+    final int table;
+    final Setting setting;
+    final String label;
+
+    private Score(int table, Setting setting, String label) {
+      this.table = table;
+      this.setting = setting;
+      this.label = label;
+    }
+
+    @Override
+    public double[] call() throws IOException {
+      return metrics(RESULT_DIR);
+    }
+
+    /**
+     * The numbers of the score for the run in <code>dir</code>, named by {@link #metricNames()} and
+     * followed by the confidence interval of each F1 when bootstrapping.
+     */
+    double[] metrics(String dir) throws IOException {
+      return metrics(dir, totals(dir));
+    }
+
+    /**
+     * The numbers of the score for the run in <code>dir</code> from its {@link #totals(String)},
+     * so that a caller needing both computes them once.
+     */
+    double[] metrics(String dir, Counts[] totals) throws IOException {
+      switch (this) {
+        case CONN_GS:
+          return connMetrics(dir, "conn.hw.out", totals[0]);
+        case CONN_AUTO:
+          return connMetrics(dir, "conn.hw.auto.out", totals[0]);
+        case ARG_EXT_PART_GS:
+        case ARG_EXT_PART_EP:
+        case ARG_EXT_PART_AUTO:
+        case ARG_EXT_GS:
+        case ARG_EXT_EP:
+        case ARG_EXT_AUTO:
+          return argExtMetrics(totals);
+        default:
+          return calcMetrics(totals[0]);
+      }
+    }
+
+    String[] metricNames() {
+      switch (this) {
+        case CONN_GS:
+        case CONN_AUTO:
+          return new String[] {"accuracy", "f1"};
+        case ARG_EXT_PART_GS:
+        case ARG_EXT_PART_EP:
+        case ARG_EXT_PART_AUTO:
+        case ARG_EXT_GS:
+        case ARG_EXT_EP:
+        case ARG_EXT_AUTO:
+          return new String[] {"arg1F1", "arg2F1", "bothF1"};
+        default:
+          return new String[] {"precision", "recall", "f1"};
+      }
+    }
+
+    /**
+     * The totals behind each F1 of the score for the run in <code>dir</code>, the three argument
+     * F1s for the argument extractor and a single one otherwise.
+     */
+    Counts[] totals(String dir) throws IOException {
+      switch (this) {
+        case CONN_GS:
+          return new Counts[] {connTotals(dir, "conn.hw.out")};
+        case CONN_AUTO:
+          return new Counts[] {connTotals(dir, "conn.hw.auto.out")};
+        case ARG_POS_GS:
+          return new Counts[] {argPosGS(dir)};
+        case ARG_POS_EP:
+          return new Counts[] {argPosEP(dir)};
+        case ARG_POS_AUTO:
+          return new Counts[] {agPosAuto(dir)};
+        case ARG_EXT_PART_GS:
+          return argExtPartGS(dir);
+        case ARG_EXT_PART_EP:
+          return argExtPartEP(dir);
+        case ARG_EXT_PART_AUTO:
+          return argExtPartAuto(dir);
+        case ARG_EXT_GS:
+          return argExtGS(dir);
+        case ARG_EXT_EP:
+          return argExtEP(dir);
+        case ARG_EXT_AUTO:
+          return argExtAuto(dir);
+        case EXP_GS:
+          return new Counts[] {expGS(dir)};
+        case EXP_EP:
+          return new Counts[] {expEP(dir)};
+        case EXP_AUTO:
+          return new Counts[] {expAuto(dir)};
+        case NON_EXP_GS:
+          return new Counts[] {nonExpGS(dir)};
+        case NON_EXP_EP:
+          return new Counts[] {nonExpEP(dir)};
+        case NON_EXP_AUTO:
+          return new Counts[] {nonExpAuto(dir)};
+        case OVERALL_EP:
+          return new Counts[] {overallEP(dir)};
+        case OVERALL_AUTO:
+          return new Counts[] {overallAuto(dir)};
+        default:
+          throw new AssertionError(this);
+      }
+    }
+  }
 
   public static void main(String[] args) throws IOException {
 
-    if (args.length > 0) {
-      RESULT_DIR = args[0].endsWith("/") ? args[0] : args[0] + "/";
+    int threads = 0;
+    String candidate = null;
+    boolean senses = false;
+    boolean sweep = false;
+    boolean attribution = false;
+    String curves = null;
+    int port = -1;
+    boolean stream = false;
+    int every = 1000;
+    List<String> batch = new ArrayList<String>();
+    List<String> shards = new ArrayList<String>();
+    List<String> partials = new ArrayList<String>();
+    String partialFile = null;
+    String tables = null;
+    String settings = null;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("--parallel")) {
+        threads = Runtime.getRuntime().availableProcessors();
+      } else if (args[i].equals("--threads") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--bootstrap")) {
+        RESAMPLES = Bootstrap.RESAMPLES;
+      } else if (args[i].equals("--resamples") && i + 1 < args.length) {
+        RESAMPLES = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--compare") && i + 1 < args.length) {
+        candidate = args[++i].endsWith("/") ? args[i] : args[i] + "/";
+      } else if (args[i].equals("--permutations") && i + 1 < args.length) {
+        PERMUTATIONS = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--senses")) {
+        senses = true;
+      } else if (args[i].equals("--attribution")) {
+        attribution = true;
+      } else if (args[i].equals("--sweep")) {
+        sweep = true;
+      } else if (args[i].equals("--curves") && i + 1 < args.length) {
+        sweep = true;
+        curves = args[++i];
+      } else if (args[i].equals("--serve") && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--runs") && i + 1 < args.length) {
+        batch.addAll(expandRuns(args[++i]));
+      } else if (args[i].equals("--shards") && i + 1 < args.length) {
+        shards.addAll(expandRuns(args[++i]));
+      } else if (args[i].equals("--merge") && i + 1 < args.length) {
+        partials.addAll(expand(args[++i], false));
+      } else if (args[i].equals("--partial") && i + 1 < args.length) {
+        partialFile = args[++i];
+      } else if (args[i].equals("--stream")) {
+        stream = true;
+      } else if (args[i].equals("--every") && i + 1 < args.length) {
+        every = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--metrics")) {
+        StageMetrics.enabled = true;
+      } else if (args[i].equals("--external") && i + 1 < args.length) {
+        EXTERNAL_BUDGET = Long.parseLong(args[++i]) << 20;
+      } else if (args[i].equals("--pipeline") && i + 1 < args.length) {
+        PIPELINE_WORKERS = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--tables") && i + 1 < args.length) {
+        tables = args[++i];
+      } else if (args[i].equals("--settings") && i + 1 < args.length) {
+        settings = args[++i];
+      } else if (args[i].equals("--no-cache")) {
+        GoldCache.enabled = false;
+      } else if (args[i].equals("--seed") && i + 1 < args.length) {
+        SEED = Long.parseLong(args[++i]);
+      } else {
+        RESULT_DIR = args[i].endsWith("/") ? args[i] : args[i] + "/";
+      }
     }
-    if (!(new File(RESULT_DIR).exists())) {
-      System.err.println("Error! Results folder " + RESULT_DIR + " not found!");
-      System.exit(65);
+    RUNS.add(RESULT_DIR);
+    if (candidate != null) {
+      RUNS.add(candidate);
+    }
+    RUNS.addAll(batch);
+    RUNS.addAll(shards);
+    SHARDS.addAll(shards);
+    RECORD_OUTCOMES = RESAMPLES > 0 || candidate != null;
+    try {
+      PLAN = plan(tables, settings);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error! " + e.getMessage());
+      System.exit(64);
+    }
+    for (String dir : RUNS) {
+      if (!(new File(dir).exists())) {
+        System.err.println("Error! Results folder " + dir + " not found!");
+        System.exit(65);
+      }
+    }
+    if (port >= 0) {
+      ScoringServer.start(RESULT_DIR, port, threads);
+    } else if (stream) {
+      new StreamScorer(goldLabels(RESULT_DIR, "conn.test", GoldFormat.LAST_TOKEN), goldLabels(
+          RESULT_DIR, "argpos.hw.test", GoldFormat.LAST_TOKEN), goldLabels(RESULT_DIR,
+          "exp.hw.test", GoldFormat.EXPLICIT), goldLabels(RESULT_DIR, "implicit.test",
+          GoldFormat.NON_EXPLICIT), argExtGold(RESULT_DIR)).score(System.in, every, System.out);
+    } else if (candidate != null) {
+      printComparison(compare(threads, candidate));
+    } else if (!batch.isEmpty()) {
+      printMatrix(batch, scoreRuns(threads, batch));
+    } else if (partialFile != null || !shards.isEmpty() || !partials.isEmpty()) {
+      PartialCounts total = new PartialCounts();
+      for (String file : partials) {
+        total.merge(PartialCounts.read(new File(file)));
+      }
+      if (partials.isEmpty() || !shards.isEmpty()) {
+        total.merge(scoreShards(threads, shards.isEmpty() ? RUNS.subList(0, 1) : shards));
+      }
+      if (partialFile != null) {
+        total.write(new File(partialFile));
+        System.out.println("Wrote the counts of " + total.shards() + " shard"
+            + (total.shards() == 1 ? "" : "s") + " to " + partialFile);
+      } else {
+        total.print();
+      }
+    } else if (senses) {
+      printSenses(threads);
+    } else if (sweep) {
+      printSweeps(curves);
+    } else if (attribution) {
+      printAttribution();
     } else {
 
+      Map<Score, Future<double[]>> results = score(threads);
+
       System.out.println("Printing reproduced results from (Lin et al. 2014) JNLE paper. ");
       System.out.println();
-      printTable2();
-      System.out.println();
-      System.out.println();
-      printTable3();
-      System.out.println();
-      System.out.println();
-      printTable5();
+      printTables(results);
+    }
+    if (StageMetrics.enabled && port < 0) {
       System.out.println();
+      StageMetrics.print(System.out);
+    }
+  }
+
+  /**
+   * Submits every score to a pool of at most <code>threads</code> workers. With a single thread the
+   * scores are computed one after another in table order.
+   */
+  private static Map<Score, Future<double[]>> score(int threads) {
+    int n = Math.max(1, Math.min(threads, PLAN.size()));
+    ExecutorService pool = Executors.newFixedThreadPool(n);
+    Map<Score, Future<double[]>> results = new EnumMap<Score, Future<double[]>>(Score.class);
+    try {
+      for (Score score : PLAN) {
+        results.put(score, pool.submit(score));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Submits the totals of every score, for the run in {@link #RESULT_DIR} followed by the run in
+   * <code>candidate</code>, to a pool of at most <code>threads</code> workers. Both runs share the
+   * gold standard loaded by whichever score reads it first.
+   */
+  private static Map<Score, List<Future<Counts[]>>> compare(int threads, final String candidate) {
+    int n = Math.max(1, Math.min(threads, 2 * PLAN.size()));
+    ExecutorService pool = Executors.newFixedThreadPool(n);
+    Map<Score, List<Future<Counts[]>>> results =
+        new EnumMap<Score, List<Future<Counts[]>>>(Score.class);
+    try {
+      for (final Score score : PLAN) {
+        List<Future<Counts[]>> runs = new ArrayList<Future<Counts[]>>();
+        for (final String dir : RUNS) {
+          runs.add(pool.submit(new Callable<Counts[]>() {
+            @Override
+            public Counts[] call() throws IOException {
+              return score.totals(dir);
+            }
+          }));
+        }
+        results.put(score, runs);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Submits every score of every run to a work-stealing pool of <code>threads</code> workers, all
+   * available processors when 0. The runs share the gold standard, loaded once.
+   * 
+   * @return the metrics of each run, by score
+   */
+  private static List<Map<Score, Future<double[]>>> scoreRuns(int threads, List<String> runs) {
+    ForkJoinPool pool =
+        new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    List<Map<Score, Future<double[]>>> results = new ArrayList<Map<Score, Future<double[]>>>();
+    try {
+      for (final String dir : runs) {
+        Map<Score, Future<double[]>> run = new EnumMap<Score, Future<double[]>>(Score.class);
+        for (final Score score : PLAN) {
+          run.put(score, pool.submit(new Callable<double[]>() {
+            @Override
+            public double[] call() throws IOException {
+              return score.metrics(dir);
+            }
+          }));
+        }
+        results.add(run);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Scores every shard on a work-stealing pool of <code>threads</code> workers, all available
+   * processors when 0, each against its own gold standard.
+   * 
+   * @return the counts of all the shards, merged
+   * @throws IOException
+   */
+  private static PartialCounts scoreShards(int threads, List<String> shards) throws IOException {
+    ForkJoinPool pool =
+        new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    List<Future<PartialCounts>> partials = new ArrayList<Future<PartialCounts>>();
+    try {
+      for (final String dir : shards) {
+        partials.add(pool.submit(new Callable<PartialCounts>() {
+          @Override
+          public PartialCounts call() throws IOException {
+            try {
+              return partialCounts(dir);
+            } finally {
+              forget(dir);
+            }
+          }
+        }));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    PartialCounts total = new PartialCounts();
+    for (int i = 0; i < shards.size(); ++i) {
+      total.merge(SharedResults.await(partials.get(i), shards.get(i)));
+    }
+    return total;
+  }
+
+  /**
+   * The counts of every score of the shard in <code>dir</code>.
+   */
+  private static PartialCounts partialCounts(String dir) throws IOException {
+    PartialCounts partial = new PartialCounts();
+    for (Score score : Score.values()) {
+      long instances = 0;
+      if (score == Score.CONN_GS || score == Score.CONN_AUTO) {
+        for (int count : connCounts(dir, score == Score.CONN_GS ? "conn.hw.out"
+            : "conn.hw.auto.out")) {
+          instances += count;
+        }
+      }
+      Counts[] totals = score.totals(dir);
+      partial.add(score, totals, score.metrics(dir, totals), instances);
+    }
+    partial.endShard();
+    return partial;
+  }
+
+  /**
+   * Prints the F1s of every run as a tab-separated matrix, one row per run and one column per F1,
+   * rows printed as their runs finish in order.
+   * 
+   * @throws IOException
+   */
+  private static void printMatrix(List<String> runs, List<Map<Score, Future<double[]>>> results)
+      throws IOException {
+    String[] args = {"Arg1", "Arg2", "Arg1 & Arg2"};
+    StringBuilder header = new StringBuilder("Run");
+    for (Score score : PLAN) {
+      String[] names = score.metricNames();
+      int f1s = 0;
+      for (String name : names) {
+        if (name.toLowerCase().endsWith("f1")) {
+          header.append('\t').append(score.label.replaceAll("\\s+", " "));
+          header.append(name.equals("f1") ? " F1" : " " + args[f1s] + " F1");
+          ++f1s;
+        }
+      }
+    }
+    System.out.println(header);
+    for (int r = 0; r < runs.size(); ++r) {
+      StringBuilder row = new StringBuilder(runs.get(r));
+      for (Score score : PLAN) {
+        double[] metrics = SharedResults.await(results.get(r).get(score), runs.get(r));
+        String[] names = score.metricNames();
+        for (int i = 0; i < names.length; ++i) {
+          if (names[i].toLowerCase().endsWith("f1")) {
+            row.append('\t').append(String.format("%.2f", metrics[i]));
+          }
+        }
+      }
+      System.out.println(row);
+      forget(runs.get(r));
+    }
+  }
+
+  /**
+   * The results folders listed in <code>spec</code>, separated by commas. A <code>*</code>,
+   * <code>?</code>, <code>[</code> or <code>{</code> in the last name of an entry makes it a glob
+   * pattern of folders, such as <code>grid/run-*</code>, expanded in name order.
+   * 
+   * @throws IOException
+   */
+  private static List<String> expandRuns(String spec) throws IOException {
+    return expand(spec, true);
+  }
+
+  /**
+   * The folders, or the files, listed in <code>spec</code> as by {@link #expandRuns(String)}.
+   * 
+   * @throws IOException
+   */
+  private static List<String> expand(String spec, boolean folders) throws IOException {
+    List<String> runs = new ArrayList<String>();
+    for (String entry : spec.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      Path path = Paths.get(entry);
+      String name = path.getFileName() == null ? "" : path.getFileName().toString();
+      if (!name.matches(".*[*?\\[{].*")) {
+        runs.add(!folders || entry.endsWith("/") ? entry : entry + "/");
+        continue;
+      }
+      Path parent = path.getParent() == null ? Paths.get(".") : path.getParent();
+      List<String> matches = new ArrayList<String>();
+      DirectoryStream<Path> dirs = Files.newDirectoryStream(parent, name);
+      try {
+        for (Path dir : dirs) {
+          if (folders ? Files.isDirectory(dir) : Files.isRegularFile(dir)) {
+            matches.add((path.getParent() == null ? dir.getFileName() : dir) + (folders ? "/"
+                : ""));
+          }
+        }
+      } finally {
+        dirs.close();
+      }
+      Collections.sort(matches);
+      runs.addAll(matches);
+    }
+    return runs;
+  }
+
+  /**
+   * Prints the per-sense evaluation of every classifier output that lists its whole distribution,
+   * evaluated concurrently by at most <code>threads</code> workers.
+   * 
+   * @throws IOException
+   */
+  private static void printSenses(int threads) throws IOException {
+    final String[][] outputs = {
+        {"Table 3. Argument position classifier, GS + no EP", "argpos.hw"},
+        {"Table 3. Argument position classifier, GS + EP", "argpos.hw.ep"},
+        {"Table 3. Argument position classifier, Auto + EP", "argpos.hw.ep.auto"},
+        {"Table 6. Explicit classifier, GS + no EP", "exp.hw"},
+        {"Table 6. Explicit classifier, GS + EP", "exp.hw.ep"},
+        {"Table 6. Explicit classifier, Auto + EP", "exp.hw.ep.auto"},
+        {"Table 7. Non-explicit classifier, GS + no EP", "implicit"},
+        {"Table 7. Non-explicit classifier, GS + EP", "implicit.hw.ep"},
+        {"Table 7. Non-explicit classifier, Auto + EP", "implicit.hw.ep.auto"}};
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads,
+        outputs.length)));
+    List<Future<SenseEvaluation>> evaluations = new ArrayList<Future<SenseEvaluation>>();
+    try {
+      for (final String[] output : outputs) {
+        final GoldFormat format =
+            output[1].startsWith("exp") ? GoldFormat.EXPLICIT : output[1].startsWith("implicit")
+                ? GoldFormat.NON_EXPLICIT : GoldFormat.LAST_TOKEN;
+        evaluations.add(pool.submit(new Callable<SenseEvaluation>() {
+          @Override
+          public SenseEvaluation call() throws IOException {
+            return SenseEvaluation.evaluate(goldLabels(RESULT_DIR, output[1] + ".test", format),
+                new File(RESULT_DIR + output[1] + ".out"));
+          }
+        }));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    for (int i = 0; i < outputs.length; ++i) {
+      SharedResults.await(evaluations.get(i), outputs[i][1]).print(outputs[i][0]);
       System.out.println();
-      printTable6();
       System.out.println();
+    }
+  }
+
+  /**
+   * Prints the threshold sweep of the GS and Auto connective classifier outputs.
+   * 
+   * @param curves folder to write the full precision-recall curves to, or null
+   * @throws IOException
+   */
+  private static void printSweeps(String curves) throws IOException {
+    String[][] outputs = {{"Table 2. Connective classifier, GS", "conn.hw.out"},
+        {"Table 2. Connective classifier, Auto", "conn.hw.auto.out"}};
+    for (String[] output : outputs) {
+      File curve = curves == null ? null : new File(curves, output[1] + ".pr.tsv");
+      ThresholdSweep.sweep(goldLabels(RESULT_DIR, "conn.test", GoldFormat.LAST_TOKEN), new File(
+          RESULT_DIR + output[1]), curve).print(output[0]);
       System.out.println();
-      printTable7();
       System.out.println();
+    }
+  }
+
+  /**
+   * Prints the errors of the GS + EP and Auto + EP end-to-end runs by the stage they first appear
+   * at.
+   * 
+   * @throws IOException
+   */
+  private static void printAttribution() throws IOException {
+    String[][] settings = {{"Error attribution, GS + EP", ".hw.ep", "conn.hw.out", "argext_hw_ep"},
+        {"Error attribution, Auto + EP", ".hw.ep.auto", "conn.hw.auto.out", "argext_hw_ep_auto"}};
+    for (String[] setting : settings) {
+      String argpos = "argpos" + setting[1];
+      ErrorAttribution.attribute(overallGold(RESULT_DIR),
+          goldLabels(RESULT_DIR, argpos + ".test", GoldFormat.LAST_TOKEN),
+          new File(RESULT_DIR + argpos + ".out"), new File(RESULT_DIR + setting[3]),
+          new File(RESULT_DIR + "overall" + setting[1] + ".out"), connectives(RESULT_DIR,
+              setting[2]), nonExplicitCounts(RESULT_DIR, "implicit" + setting[1] + ".test",
+              RESULT_DIR, "implicit" + setting[1] + ".out")).print(setting[0]);
       System.out.println();
-      printTable9();
       System.out.println();
     }
   }
 
+  /**
+   * Waits for a score to finish, rethrowing its I/O failure.
+   */
+  private static double[] get(Map<Score, Future<double[]>> results, Score score)
+      throws IOException {
+    return SharedResults.await(results.get(score), score);
+  }
+
+  /**
+   * Prints the F1 of both runs for every score, with the p-value of a paired approximate
+   * randomization test of their difference.
+   * 
+   * @throws IOException
+   */
+  private static void printComparison(Map<Score, List<Future<Counts[]>>> results)
+      throws IOException {
+    System.out.println("Paired approximate randomization test of the F1 differences, "
+        + PERMUTATIONS + " permutations.");
+    System.out.println("Baseline:  " + RUNS.get(0));
+    System.out.println("Candidate: " + RUNS.get(1));
+    System.out.println("___________________________________");
+    System.out.println(String.format("%-40s%10s%10s%10s%10s", "", "Baseline", "Candidate",
+        "Diff", "p"));
+    String[] args = {"Arg1", "Arg2", "Arg1 & Arg2"};
+    for (Score score : PLAN) {
+      Counts[] baseline = SharedResults.await(results.get(score).get(0), score);
+      Counts[] candidate = SharedResults.await(results.get(score).get(1), score);
+      for (int i = 0; i < baseline.length; ++i) {
+        Outcomes a = outcomes(baseline[i]);
+        Outcomes b = outcomes(candidate[i]);
+        double f1A = Counts.f1(baseline[i].gold, baseline[i].predicted, baseline[i].correct);
+        double f1B = Counts.f1(candidate[i].gold, candidate[i].predicted, candidate[i].correct);
+        double p = a == null || b == null ? Double.NaN : RandomizationTest.pValue(a, b,
+            PERMUTATIONS, SEED);
+        String label = baseline.length == 1 ? score.label : score.label + "  " + args[i];
+        System.out.println(String.format("%-40s%10.2f%10.2f%+10.2f%10s", label, f1A, f1B, f1B
+            - f1A, Double.isNaN(p) ? "n/a" : String.format("%.4f", p)));
+      }
+    }
+    System.out.println();
+  }
+
+  /**
+   * The scores of the tables and the settings listed, separated by commas, such as
+   * <code>6,7</code> and <code>auto</code>, every table or every setting when a list is null. Each
+   * score reads only the outputs it needs, through the counts kept by {@link #results(String)}, so
+   * an output shared by several scores, such as <code>implicit.hw.ep.out</code> of Tables 7 and 9,
+   * is read once.
+   * 
+   * @throws IllegalArgumentException if a table or a setting does not exist, or none is left
+   */
+  static Set<Score> plan(String tables, String settings) {
+    Set<Integer> tableSet = new HashSet<Integer>();
+    Set<Integer> known = new TreeSet<Integer>();
+    for (Score score : Score.values()) {
+      known.add(score.table);
+    }
+    for (String entry : tables == null ? new String[0] : tables.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      Integer table = entry.matches("\\d{1,2}") ? Integer.valueOf(entry) : null;
+      if (table == null || !known.contains(table)) {
+        throw new IllegalArgumentException("Unknown table " + entry + ", the tables are " + known);
+      }
+      tableSet.add(table);
+    }
+    Set<Setting> settingSet = EnumSet.noneOf(Setting.class);
+    for (String entry : settings == null ? new String[0] : settings.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      try {
+        settingSet.add(Setting.valueOf(entry.toUpperCase(Locale.ROOT)));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown setting " + entry
+            + ", the settings are gs, ep and auto");
+      }
+    }
+    Set<Score> plan = EnumSet.noneOf(Score.class);
+    for (Score score : Score.values()) {
+      if ((tableSet.isEmpty() || tableSet.contains(score.table))
+          && (settingSet.isEmpty() || settingSet.contains(score.setting))) {
+        plan.add(score);
+      }
+    }
+    if (plan.isEmpty()) {
+      throw new IllegalArgumentException("No score of tables " + tables + " in settings "
+          + settings);
+    }
+    return plan;
+  }
+
+  /**
+   * Prints every table with a planned score, with the rows of its planned scores.
+   * 
+   * @throws IOException
+   */
+  private static void printTables(Map<Score, Future<double[]>> results) throws IOException {
+    Set<Integer> tables = new TreeSet<Integer>();
+    for (Score score : results.keySet()) {
+      tables.add(score.table);
+    }
+    int printed = 0;
+    for (int table : tables) {
+      if (printed++ > 0) {
+        System.out.println();
+        System.out.println();
+      }
+      switch (table) {
+        case 2:
+          printTable2(results);
+          break;
+        case 3:
+          printTable3(results);
+          break;
+        case 5:
+          printTable5(results);
+          break;
+        case 6:
+          printTable6(results);
+          break;
+        case 7:
+          printTable7(results);
+          break;
+        default:
+          printTable9(results);
+      }
+    }
+    System.out.println();
+  }
+
   /**
    * Print Table 2. Results for the connective classifier. No EP as this is the first component in
    * the pipeline.
    * 
    * @throws IOException
    */
-  private static void printTable2() throws IOException {
+  private static void printTable2(Map<Score, Future<double[]>> results) throws IOException {
     System.out
         .println("Table 2. Results for the connective classifier. No EP as this is the first component in the pipeline.");
     System.out.println("___________________________________");
     System.out.println("         Acc     F1");
-    System.out.print("GS:      ");
-    connGS();
-    System.out.print("Auto:    ");
-    connAuto();
+    if (results.containsKey(Score.CONN_GS)) {
+      System.out.print("GS:      ");
+      printConn(get(results, Score.CONN_GS));
+    }
+    if (results.containsKey(Score.CONN_AUTO)) {
+      System.out.print("Auto:    ");
+      printConn(get(results, Score.CONN_AUTO));
+    }
   }
 
   /**
@@ -89,21 +842,27 @@ public class Main {
    * 
    * @throws IOException
    */
-  private static void printTable3() throws IOException {
+  private static void printTable3(Map<Score, Future<double[]>> results) throws IOException {
     System.out.println("Table 3. Results for the argument position classifier.");
     System.out.println("___________________________________");
 
-    System.out.println("GS + no EP:");
-    argPosGS();
-    System.out.println();
+    if (results.containsKey(Score.ARG_POS_GS)) {
+      System.out.println("GS + no EP:");
+      printMetrics(get(results, Score.ARG_POS_GS));
+      System.out.println();
+    }
 
-    System.out.println("GS + EP:");
-    argPosEP();
-    System.out.println();
+    if (results.containsKey(Score.ARG_POS_EP)) {
+      System.out.println("GS + EP:");
+      printMetrics(get(results, Score.ARG_POS_EP));
+      System.out.println();
+    }
 
-    System.out.println("Auto + EP:");
-    agPosAuto();
-    System.out.println();
+    if (results.containsKey(Score.ARG_POS_AUTO)) {
+      System.out.println("Auto + EP:");
+      printMetrics(get(results, Score.ARG_POS_AUTO));
+      System.out.println();
+    }
   }
 
   /**
@@ -111,29 +870,41 @@ public class Main {
    * 
    * @throws IOException
    */
-  private static void printTable5() throws IOException {
+  private static void printTable5(Map<Score, Future<double[]>> results) throws IOException {
     System.out.println("Table 5. Overall results for argument extractor.");
     System.out.println("___________________________________");
     System.out.println("PARTIAL Matching:");
-    System.out.print("GS + no EP    ");
-    argExtPartGS();
-    System.out.println();
-    System.out.print("GS + EP       ");
-    argExtPartEP();
-    System.out.println();
-    System.out.print("Auto + EP     ");
-    argExtPartAuto();
-    System.out.println();
+    if (results.containsKey(Score.ARG_EXT_PART_GS)) {
+      System.out.print("GS + no EP    ");
+      printArgExt(get(results, Score.ARG_EXT_PART_GS));
+      System.out.println();
+    }
+    if (results.containsKey(Score.ARG_EXT_PART_EP)) {
+      System.out.print("GS + EP       ");
+      printArgExt(get(results, Score.ARG_EXT_PART_EP));
+      System.out.println();
+    }
+    if (results.containsKey(Score.ARG_EXT_PART_AUTO)) {
+      System.out.print("Auto + EP     ");
+      printArgExt(get(results, Score.ARG_EXT_PART_AUTO));
+      System.out.println();
+    }
     System.out.println("EXACT Matching:");
-    System.out.print("GS + no EP    ");
-    argExtGS();
-    System.out.println();
-    System.out.print("GS + EP       ");
-    argExtEP();
-    System.out.println();
-    System.out.print("Auto + EP     ");
-    argExtAuto();
-    System.out.println();
+    if (results.containsKey(Score.ARG_EXT_GS)) {
+      System.out.print("GS + no EP    ");
+      printArgExt(get(results, Score.ARG_EXT_GS));
+      System.out.println();
+    }
+    if (results.containsKey(Score.ARG_EXT_EP)) {
+      System.out.print("GS + EP       ");
+      printArgExt(get(results, Score.ARG_EXT_EP));
+      System.out.println();
+    }
+    if (results.containsKey(Score.ARG_EXT_AUTO)) {
+      System.out.print("Auto + EP     ");
+      printArgExt(get(results, Score.ARG_EXT_AUTO));
+      System.out.println();
+    }
   }
 
   /**
@@ -141,21 +912,27 @@ public class Main {
    * 
    * @throws IOException
    */
-  private static void printTable6() throws IOException {
+  private static void printTable6(Map<Score, Future<double[]>> results) throws IOException {
     System.out.println("Table 6. Results for explicit classifier.");
     System.out.println("___________________________________");
 
-    System.out.println("GS + no EP:");
-    expGS();
-    System.out.println();
+    if (results.containsKey(Score.EXP_GS)) {
+      System.out.println("GS + no EP:");
+      printMetrics(get(results, Score.EXP_GS));
+      System.out.println();
+    }
 
-    System.out.println("GS + EP:");
-    expEP();
-    System.out.println();
+    if (results.containsKey(Score.EXP_EP)) {
+      System.out.println("GS + EP:");
+      printMetrics(get(results, Score.EXP_EP));
+      System.out.println();
+    }
 
-    System.out.println("Auto + EP");
-    expAuto();
-    System.out.println();
+    if (results.containsKey(Score.EXP_AUTO)) {
+      System.out.println("Auto + EP");
+      printMetrics(get(results, Score.EXP_AUTO));
+      System.out.println();
+    }
   }
 
   /**
@@ -163,20 +940,26 @@ public class Main {
    * 
    * @throws IOException
    */
-  private static void printTable7() throws IOException {
+  private static void printTable7(Map<Score, Future<double[]>> results) throws IOException {
     System.out.println("Table 7. Results for non-explicit classifier.");
     System.out.println("___________________________________");
-    System.out.println("GS + no EP:");
-    nonExpGS();
-    System.out.println();
+    if (results.containsKey(Score.NON_EXP_GS)) {
+      System.out.println("GS + no EP:");
+      printMetrics(get(results, Score.NON_EXP_GS));
+      System.out.println();
+    }
 
-    System.out.println("GS + EP:");
-    nonExpEP();
-    System.out.println();
+    if (results.containsKey(Score.NON_EXP_EP)) {
+      System.out.println("GS + EP:");
+      printMetrics(get(results, Score.NON_EXP_EP));
+      System.out.println();
+    }
 
-    System.out.println("Auto + EP");
-    nonExpAuto();
-    System.out.println();
+    if (results.containsKey(Score.NON_EXP_AUTO)) {
+      System.out.println("Auto + EP");
+      printMetrics(get(results, Score.NON_EXP_AUTO));
+      System.out.println();
+    }
   }
 
   /**
@@ -184,43 +967,77 @@ public class Main {
    * 
    * @throws IOException
    */
-  private static void printTable9() throws IOException {
+  private static void printTable9(Map<Score, Future<double[]>> results) throws IOException {
     System.out
         .println("Table 9. Overall performance for both Explicit and Non-Explicit relations.");
     System.out.println("___________________________________");
     System.out.println("                       F1");
-    System.out.println("Partial   GS + EP:  47.99");
-    System.out.println("        Auto + EP:  45.34");
-    System.out.print("Exact     GS + EP:  ");
-    overallEP();
-    System.out.print("        Auto + EP:  ");
-    overallAuto();
+    // partial matching is not reproduced, these are the numbers of the paper
+    boolean ep = results.containsKey(Score.OVERALL_EP);
+    boolean auto = results.containsKey(Score.OVERALL_AUTO);
+    if (ep) {
+      System.out.println("Partial   GS + EP:  47.99");
+    }
+    if (auto) {
+      System.out.println((ep ? "        " : "Partial ") + "Auto + EP:  45.34");
+    }
+    if (ep) {
+      System.out.print("Exact     GS + EP:  ");
+      double[] overallEP = get(results, Score.OVERALL_EP);
+      System.out.println(String.format("%.2f", overallEP[2]) + interval(overallEP, 3));
+    }
+    if (auto) {
+      System.out.print((ep ? "        " : "Exact   ") + "Auto + EP:  ");
+      double[] overallAuto = get(results, Score.OVERALL_AUTO);
+      System.out.println(String.format("%.2f", overallAuto[2]) + interval(overallAuto, 3));
+    }
     System.out.println();
   }
 
-  private static void connGS() throws IOException {
-    String gsFile = RESULT_DIR + "conn.test";
-    String pdFile = RESULT_DIR + "conn.hw.out";
-
-    int[] counts = countConn(gsFile, pdFile);
-
-    int tp = counts[0], fn = counts[1], fp = counts[2], tn = counts[3];
+  private static void printConn(double[] metric) {
+    System.out.print(String.format("%.2f", metric[0]));
+    System.out.println("   " + String.format("%.2f", metric[1]) + interval(metric, 2));
+  }
 
-    double p = (tp + fp) == 0 ? 0 : tp * 100.0 / (tp + fp);
-    double r = (tp + fn) == 0 ? 0 : tp * 100.0 / (tp + fn);
-    double f1 = (p + r) == 0 ? 0 : 2 * p * r / (p + r);
-    double acc = (tp + tn) * 100.0 / (tp + fp + fn + tn);
+  private static void printMetrics(double[] metric) {
+    System.out.println("Prec       " + String.format("%.2f", metric[0]));
+    System.out.println("Recall     " + String.format("%.2f", metric[1]));
+    System.out.println("F1         " + String.format("%.2f", metric[2]) + interval(metric, 3));
+  }
 
-    System.out.print(String.format("%.2f", acc));
-    System.out.println("   " + String.format("%.2f", f1));
+  private static void printArgExt(double[] f1) {
+    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
+    System.out.print("                " + String.format("%.2f", f1[0]) + "     ");
+    System.out.print("  " + String.format("%.2f", f1[1]) + "     ");
+    System.out.println("         " + String.format("%.2f", f1[2]) + "     ");
+    if (f1.length > 3) {
+      System.out.print(String.format("%-14s", Math.round(CONFIDENCE * 100) + "% CI"));
+      System.out.print(interval(f1, 3).trim() + "  ");
+      System.out.print(interval(f1, 5).trim() + "  ");
+      System.out.println(interval(f1, 7).trim());
+    }
+  }
 
+  /**
+   * The confidence interval stored at <code>metric[from]</code> and <code>metric[from + 1]</code>,
+   * or an empty string for a point estimate. Totals that cannot be resampled have no interval.
+   */
+  private static String interval(double[] metric, int from) {
+    if (metric.length < from + 2) {
+      return "";
+    }
+    if (Double.isNaN(metric[from])) {
+      return "   [n/a]";
+    }
+    return String.format("   [%.2f, %.2f]", metric[from], metric[from + 1]);
   }
 
-  private static void connAuto() throws IOException {
-    String gsFile = RESULT_DIR + "conn.test";
-    String pdFile = RESULT_DIR + "conn.hw.auto.out";
-
-    int[] counts = countConn(gsFile, pdFile);
+  /**
+   * Accuracy and F1 of a connective classifier output.
+   */
+  private static double[] connMetrics(String dir, String pdFile, Counts totals)
+      throws IOException {
+    int[] counts = connCounts(dir, pdFile);
 
     int tp = counts[0], fn = counts[1], fp = counts[2], tn = counts[3];
 
@@ -229,556 +1046,884 @@ public class Main {
     double f1 = (p + r) == 0 ? 0 : 2 * p * r / (p + r);
     double acc = (tp + tn) * 100.0 / (tp + fp + fn + tn);
 
-    System.out.print(String.format("%.2f", acc));
-    System.out.println("   " + String.format("%.2f", f1));
-
+    return withInterval(new double[] {acc, f1}, totals);
   }
 
-  private static void argPosGS() throws IOException {
-    String expFile = RESULT_DIR + "argpos.hw.test";
-    String prdFile = RESULT_DIR + "argpos.hw.out";
+  /**
+   * The connective classifier totals, gold and predicted connectives, with the outcome of each
+   * candidate connective when recording.
+   */
+  private static Counts connTotals(String dir, String pdFile) throws IOException {
+    int[] counts = connCounts(dir, pdFile);
+    int tp = counts[0], fn = counts[1], fp = counts[2];
+    Counts totals = new Counts(tp + fn, tp + fp, tp);
+    if (RECORD_OUTCOMES) {
+      totals.outcomes = connOutcomes(dir, pdFile);
+    }
+    return totals;
+  }
 
-    int correct = countMatches(expFile, prdFile);
+  private static Counts argPosGS(String dir) throws IOException {
+    GoldLabels gold = goldLabels(goldDir(dir), "argpos.hw.test", GoldFormat.LAST_TOKEN);
+    String prdFile = dir + "argpos.hw.out";
 
-    double gsTotal = 923;
-    double prdTotal = 923;
+    Counts counts = countMatches(gold, prdFile);
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+    return explicitTotals(counts, connectives(dir, null), 0, prdFile);
   }
 
-  private static void argPosEP() throws IOException {
-    String expFile = RESULT_DIR + "argpos.hw.ep.test";
-    String prdFile = RESULT_DIR + "argpos.hw.ep.out";
-
-    int correct = countMatches(expFile, prdFile);
+  private static Counts argPosEP(String dir) throws IOException {
+    GoldLabels gold = goldLabels(dir, "argpos.hw.ep.test", GoldFormat.LAST_TOKEN);
+    String prdFile = dir + "argpos.hw.ep.out";
 
-    double gsTotal = 923;
-    double prdTotal = 918;
+    Counts counts = countMatches(gold, prdFile);
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+    return explicitTotals(counts, connectives(dir, "conn.hw.out"), 0, prdFile);
   }
 
-  private static void agPosAuto() throws IOException {
-    String expFile = RESULT_DIR + "argpos.hw.ep.auto.test";
-    String prdFile = RESULT_DIR + "argpos.hw.ep.auto.out";
+  private static Counts agPosAuto(String dir) throws IOException {
+    GoldLabels gold = goldLabels(dir, "argpos.hw.ep.auto.test", GoldFormat.LAST_TOKEN);
+    String prdFile = dir + "argpos.hw.ep.auto.out";
 
-    int correct = countMatches(expFile, prdFile);
+    Counts counts = countMatches(gold, prdFile);
 
-    double gsTotal = 923;
-    double prdTotal = 912;
+    return explicitTotals(counts, connectives(dir, "conn.hw.auto.out"), 0, prdFile);
+  }
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
+  private static Counts[] argExtGS(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[0], dir, "argext_hw", connectives(dir, null), false);
+  }
 
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+  private static Counts[] argExtEP(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[1], dir, "argext_hw_ep", connectives(dir, "conn.hw.out"),
+        false);
   }
 
-  private static void argExtGS() throws IOException {
-    File[] gsFiles = new File(RESULT_DIR + "argext_gs/").listFiles(new FilenameFilter() {
-      public boolean accept(File dir, String name) {
-        return name.endsWith("pipe");
-      }
-    });
-    int arg1 = 0, arg2 = 0, both = 0;
-    for (File gsFile : gsFiles) {
-      String dir = RESULT_DIR + "argext_hw/";
-      int[] counts = countArgExt(gsFile, new File(dir + gsFile.getName()));
-      arg1 += counts[0];
-      arg2 += counts[1];
-      both += counts[2];
-    }
-    arg1 += 46;
-    arg2 += 21;
-    both += 51;
-    double gsTotal = 923;
-    double prdTotal = 923;
-
-    double[] arg1Metric = calcMetrics(gsTotal, prdTotal, arg1);
-    double[] arg2Metric = calcMetrics(gsTotal, prdTotal, arg2);
-    double[] bothMetric = calcMetrics(gsTotal, prdTotal, both);
+  private static Counts[] argExtAuto(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[2], dir, "argext_hw_ep_auto", connectives(dir,
+        "conn.hw.auto.out"), false);
+  }
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1Metric[2]) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2Metric[2]) + "     ");
-    System.out.println("         " + String.format("%.2f", bothMetric[2]) + "     ");
+  private static Counts[] argExtPartAuto(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[2], dir, "argext_hw_ep_auto", connectives(dir,
+        "conn.hw.auto.out"), true);
+  }
 
+  private static Counts[] argExtPartEP(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[1], dir, "argext_hw_ep", connectives(dir, "conn.hw.out"),
+        true);
   }
 
-  private static void argExtEP() throws IOException {
-    File[] gsFiles = new File(RESULT_DIR + "argext_gs/").listFiles(new FilenameFilter() {
-      public boolean accept(File dir, String name) {
-        return name.endsWith("pipe");
-      }
-    });
-    int arg1 = 0, arg2 = 0, both = 0;
-    for (File gsFile : gsFiles) {
-      String dir = RESULT_DIR + "argext_hw_ep/";
-      int[] counts = countArgExt(gsFile, new File(dir + gsFile.getName()));
-      arg1 += counts[0];
-      arg2 += counts[1];
-      both += counts[2];
-    }
-    arg1 += 42;
-    arg2 += 12;
-    both += 54;
-    double gsTotal = 923;
-    double prdTotal = 918;
-
-    double[] arg1Metric = calcMetrics(gsTotal, prdTotal, arg1);
-    double[] arg2Metric = calcMetrics(gsTotal, prdTotal, arg2);
-    double[] bothMetric = calcMetrics(gsTotal, prdTotal, both);
+  private static Counts[] argExtPartGS(String dir) throws IOException {
+    return argExt(argExtCounts(dir)[0], dir, "argext_hw", connectives(dir, null), true);
+  }
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1Metric[2]) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2Metric[2]) + "     ");
-    System.out.println("         " + String.format("%.2f", bothMetric[2]) + "     ");
+  /**
+   * Arg1, Arg2 and Arg1 & Arg2 totals of an argument extractor output. Exact matches not present in
+   * the pipe files are taken from {@link #unaligned(String, String)}. They are not added to the
+   * partial totals: the GS pipe files hold every predicted relation, so the unaligned matches are
+   * relations the files hold with spans cut differently from the gold ones. Those spans overlap the
+   * gold ones and are counted by the partial match already, adding them would count them twice.
+   */
+  private static Counts[] argExt(ArgExtCounts counts, String dir, String name,
+      Counts connectives, boolean partial) throws IOException {
+    String prdDir = dir + name + "/";
+    Counts arg1 = argExtTotals(partial ? counts.partialArg1 : counts.arg1, connectives,
+        partial ? 0 : unaligned(dir, name + ".arg1"), prdDir);
+    Counts arg2 = argExtTotals(partial ? counts.partialArg2 : counts.arg2, connectives,
+        partial ? 0 : unaligned(dir, name + ".arg2"), prdDir);
+    Counts both = argExtTotals(partial ? counts.partialBoth : counts.both, connectives,
+        partial ? 0 : unaligned(dir, name + ".both"), prdDir);
+    return new Counts[] {arg1, arg2, both};
   }
 
-  private static void argExtAuto() throws IOException {
-    File[] gsFiles = new File(RESULT_DIR + "argext_gs/").listFiles(new FilenameFilter() {
-      public boolean accept(File dir, String name) {
-        return name.endsWith("pipe");
-      }
-    });
-    int arg1 = 0, arg2 = 0, both = 0;
-    for (File gsFile : gsFiles) {
-      String dir = RESULT_DIR + "/argext_hw_ep_auto/";
-      int[] counts = countArgExt(gsFile, new File(dir + gsFile.getName()));
-      arg1 += counts[0];
-      arg2 += counts[1];
-      both += counts[2];
-    }
-    arg1 += 37;
-    arg2 += 20;
-    both += 57;
-    double gsTotal = 923;
-    double prdTotal = 912;
-
-    double[] arg1Metric = calcMetrics(gsTotal, prdTotal, arg1);
-    double[] arg2Metric = calcMetrics(gsTotal, prdTotal, arg2);
-    double[] bothMetric = calcMetrics(gsTotal, prdTotal, both);
+  /**
+   * Totals of one argument match, with <code>unaligned</code> more correct ones. The gold total is
+   * the gold connectives, not the gold relations the counts were scored against, so only the
+   * outcomes of the predicted relations are kept.
+   */
+  private static Counts argExtTotals(Counts counts, Counts connectives, int unaligned,
+      String prdDir) throws IOException {
+    Counts totals = new Counts(connectives.gold, connectives.predicted, counts.correct + unaligned);
+    if (counts.outcomes != null) {
+      totals.outcomes = counts.outcomes.predicted();
+    }
+    checkTotals(totals, counts.predicted, prdDir);
+    return totals;
+  }
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1Metric[2]) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2Metric[2]) + "     ");
-    System.out.println("         " + String.format("%.2f", bothMetric[2]) + "     ");
+  /**
+   * The three argument F1s, followed by their confidence intervals when bootstrapping.
+   */
+  private static double[] argExtMetrics(Counts[] totals) {
+    double[] arg1Metric = calcMetrics(totals[0]);
+    double[] arg2Metric = calcMetrics(totals[1]);
+    double[] bothMetric = calcMetrics(totals[2]);
+    if (RESAMPLES == 0) {
+      return new double[] {arg1Metric[2], arg2Metric[2], bothMetric[2]};
+    }
+    return new double[] {arg1Metric[2], arg2Metric[2], bothMetric[2], arg1Metric[3],
+        arg1Metric[4], arg2Metric[3], arg2Metric[4], bothMetric[3], bothMetric[4]};
   }
 
-  private static void argExtPartAuto() {
-    double arg1 = 78.26;
-    double arg2 = 90.90;
-    double both = 77.06;
+  private static Counts expGS(String dir) throws IOException {
+    GoldLabels gold = goldLabels(goldDir(dir), "exp.hw.test", GoldFormat.EXPLICIT);
+    String pdFile = dir + "exp.hw.out";
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2) + "     ");
-    System.out.println("         " + String.format("%.2f", both) + "     ");
+    Counts counts = countExplicit(gold, new File(pdFile));
 
+    return explicitTotals(counts, connectives(dir, null), unannotatedConnectives(dir), pdFile);
   }
 
-  private static void argExtPartEP() {
-    double arg1 = 83.54;
-    double arg2 = 97.66;
-    double both = 83.00;
+  private static Counts expEP(String dir) throws IOException {
+    GoldLabels gold = goldLabels(dir, "exp.hw.ep.test", GoldFormat.EXPLICIT);
+    String pdFile = dir + "exp.hw.ep.out";
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2) + "     ");
-    System.out.println("         " + String.format("%.2f", both) + "     ");
+    Counts counts = countExplicit(gold, new File(pdFile));
 
+    return explicitTotals(counts, connectives(dir, "conn.hw.out"), unannotatedConnectives(dir),
+        pdFile);
   }
 
-  private static void argExtPartGS() {
-    double arg1 = 87.11;
-    double arg2 = 98.16;
-    double both = 85.92;
+  private static Counts expAuto(String dir) throws IOException {
+    GoldLabels gold = goldLabels(dir, "exp.hw.ep.auto.test", GoldFormat.EXPLICIT);
+    String pdFile = dir + "exp.hw.ep.auto.out";
 
-    System.out.println("Arg1 F1     Arg2 F1     Arg1 & Arg2 F1");
-    System.out.print("                " + String.format("%.2f", arg1) + "     ");
-    System.out.print("  " + String.format("%.2f", arg2) + "     ");
-    System.out.println("         " + String.format("%.2f", both) + "     ");
+    Counts counts = countExplicit(gold, new File(pdFile));
 
+    return explicitTotals(counts, connectives(dir, "conn.hw.auto.out"),
+        unannotatedConnectives(dir), pdFile);
   }
 
-  private static void expGS() throws IOException {
-    String gsFile = RESULT_DIR + "exp.hw.test";
-    String pdFile = RESULT_DIR + "exp.hw.out";
-
-    int correct = countExplicit(new File(gsFile), new File(pdFile));
-
-    double gsTotal = 922;
-    double prdTotal = 922;
+  private static Counts nonExpGS(String dir) throws IOException {
+    return nonExplicitCounts(goldDir(dir), "implicit.test", dir, "implicit.out");
+  }
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+  private static Counts nonExpEP(String dir) throws IOException {
+    return nonExplicitCounts(dir, "implicit.hw.ep.test", dir, "implicit.hw.ep.out");
   }
 
-  private static void expEP() throws IOException {
-    String gsFile = RESULT_DIR + "exp.hw.ep.test";
-    String pdFile = RESULT_DIR + "exp.hw.ep.out";
+  private static Counts nonExpAuto(String dir) throws IOException {
+    return nonExplicitCounts(dir, "implicit.hw.ep.auto.test", dir, "implicit.hw.ep.auto.out");
+  }
 
-    int correct = countExplicit(new File(gsFile), new File(pdFile));
+  private static Counts overallEP(String dir) throws IOException {
+    String expPrd = dir + "overall.hw.ep.out";
 
-    double gsTotal = 922;
-    double prdTotal = 917;
+    Counts exp = overallExplicit(dir, expPrd);
+    exp.predicted = connectives(dir, "conn.hw.out").predicted;
+    Counts nonExp = nonExplicitCounts(dir, "implicit.hw.ep.test", dir, "implicit.hw.ep.out");
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+    return new Counts().add(exp).add(nonExp);
   }
 
-  private static void expAuto() throws IOException {
-    String gsFile = RESULT_DIR + "exp.hw.ep.auto.test";
-    String pdFile = RESULT_DIR + "exp.hw.ep.auto.out";
+  private static Counts overallAuto(String dir) throws IOException {
+    String expPrd = dir + "overall.hw.ep.auto.out";
 
-    int correct = countExplicit(new File(gsFile), new File(pdFile));
+    Counts exp = overallExplicit(dir, expPrd);
+    exp.predicted = connectives(dir, "conn.hw.auto.out").predicted;
+    Counts nonExp =
+        nonExplicitCounts(dir, "implicit.hw.ep.auto.test", dir, "implicit.hw.ep.auto.out");
 
-    double gsTotal = 922;
-    double prdTotal = 911;
-
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+    return new Counts().add(exp).add(nonExp);
   }
 
-  private static void nonExpGS() throws IOException {
-
-    String gsFile = RESULT_DIR + "implicit.test";
-    String pdFile = RESULT_DIR + "implicit.out";
+  /**
+   * The explicit relations of Table 9, scored out of core with <code>--external</code>.
+   */
+  private static Counts overallExplicit(String dir, String expPrd) throws IOException {
+    if (EXTERNAL_BUDGET > 0) {
+      return OutOfCoreScorer.countExpOverall(new File(goldDir(dir) + "overall.test"), new File(
+          expPrd), EXTERNAL_BUDGET, RECORD_OUTCOMES);
+    }
+    return countExpOverall(overallGold(goldDir(dir)), new File(expPrd));
+  }
 
-    int correct = countNonExplicit(new File(gsFile), new File(pdFile));
+  /**
+   * Gold standard data shared by every run, loaded once.
+   */
+  private static final SharedResults SHARED = new SharedResults();
 
-    double gsTotal = 1017;
-    double prdTotal = 1017;
+  /**
+   * Results shared between the scores of each run, by results folder.
+   */
+  private static final ConcurrentHashMap<String, SharedResults> RUN_RESULTS =
+      new ConcurrentHashMap<String, SharedResults>();
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+  /**
+   * The results shared between the scores of the run in <code>dir</code>.
+   */
+  private static SharedResults results(String dir) {
+    SharedResults results = RUN_RESULTS.get(dir);
+    if (results == null) {
+      SharedResults created = new SharedResults();
+      results = RUN_RESULTS.putIfAbsent(dir, created);
+      if (results == null) {
+        results = created;
+      }
+    }
+    return results;
   }
 
-  private static void nonExpEP() throws IOException {
-
-    String gsFile = RESULT_DIR + "implicit.hw.ep.test";
-    String pdFile = RESULT_DIR + "implicit.hw.ep.out";
+  /**
+   * Gold standard data parsed from the files of a run, such as its EP gold files, by results
+   * folder. It outlives the results of the run, see {@link #release(String)}.
+   */
+  private static final ConcurrentHashMap<String, SharedResults> RUN_GOLD =
+      new ConcurrentHashMap<String, SharedResults>();
 
-    int correct = countNonExplicit(new File(gsFile), new File(pdFile));
+  /**
+   * The length and time of each file behind {@link #RUN_GOLD} when it was parsed, by results
+   * folder.
+   */
+  private static final ConcurrentHashMap<String, ConcurrentHashMap<File, String>> RUN_GOLD_STAMPS =
+      new ConcurrentHashMap<String, ConcurrentHashMap<File, String>>();
 
-    double gsTotal = 1017;
-    double prdTotal = 1093;
+  /**
+   * The number of scorings in progress of each run, see {@link #acquire(String)}.
+   */
+  private static final Map<String, Integer> SCORING = new HashMap<String, Integer>();
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+  /**
+   * Drops the results and the gold standard data of the run in <code>dir</code>, so it is scored
+   * afresh next time. The gold standard shared by every run stays loaded.
+   */
+  static void forget(String dir) {
+    RUN_RESULTS.remove(dir);
+    RUN_GOLD.remove(dir);
+    RUN_GOLD_STAMPS.remove(dir);
   }
 
-  private static void nonExpAuto() throws IOException {
-
-    String gsFile = RESULT_DIR + "implicit.hw.ep.auto.test";
-    String pdFile = RESULT_DIR + "implicit.hw.ep.auto.out";
+  /**
+   * Starts a scoring of the run in <code>dir</code>. Its results are kept until the last of the
+   * concurrent scorings of the run calls {@link #release(String)}, so they share the results
+   * instead of dropping them from under each other. The first scoring also drops the gold data of
+   * the run if one of its files changed since it was parsed.
+   */
+  static void acquire(String dir) {
+    synchronized (SCORING) {
+      Integer scoring = SCORING.get(dir);
+      if (scoring == null && isStale(dir)) {
+        RUN_GOLD.remove(dir);
+        RUN_GOLD_STAMPS.remove(dir);
+      }
+      SCORING.put(dir, scoring == null ? 1 : scoring + 1);
+    }
+  }
 
-    int correct = countNonExplicit(new File(gsFile), new File(pdFile));
+  /**
+   * Ends a scoring started with {@link #acquire(String)}. The results of the run are dropped once
+   * no scoring of it is in progress, its gold data is kept for the next one.
+   */
+  static void release(String dir) {
+    synchronized (SCORING) {
+      int scoring = SCORING.get(dir) - 1;
+      if (scoring == 0) {
+        SCORING.remove(dir);
+        RUN_RESULTS.remove(dir);
+      } else {
+        SCORING.put(dir, scoring);
+      }
+    }
+  }
 
-    double gsTotal = 1017;
-    double prdTotal = 1096;
+  private static boolean isStale(String dir) {
+    Map<File, String> stamps = RUN_GOLD_STAMPS.get(dir);
+    if (stamps != null) {
+      for (Map.Entry<File, String> stamp : stamps.entrySet()) {
+        if (!stamp.getValue().equals(stamp(stamp.getKey()))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, correct);
-    System.out.println("Prec       " + String.format("%.2f", metric[0]));
-    System.out.println("Recall     " + String.format("%.2f", metric[1]));
-    System.out.println("F1         " + String.format("%.2f", metric[2]));
+  private static String stamp(File file) {
+    return file.length() + ":" + file.lastModified();
   }
 
-  private static void overallEP() throws IOException {
+  /**
+   * Connective classifier counts <code>{tp, fn, fp, tn}</code> of a prediction file.
+   */
+  private static int[] connCounts(final String dir, final String pdFile) throws IOException {
+    return results(dir).get(pdFile, new Callable<int[]>() {
+      @Override
+      public int[] call() throws IOException {
+        final Outcomes outcomes = RECORD_OUTCOMES ? new Outcomes() : null;
+        int[] counts = countConn(goldLabels(goldDir(dir), "conn.test", GoldFormat.LAST_TOKEN),
+            dir + pdFile, outcomes);
+        if (outcomes != null) {
+          results(dir).get(pdFile + "#outcomes", new Callable<Outcomes>() {
+            @Override
+            public Outcomes call() {
+              return outcomes;
+            }
+          });
+        }
+        return counts;
+      }
+    });
+  }
 
-    String expGS = RESULT_DIR + "overall.test";
-    String expPrd = RESULT_DIR + "overall.hw.ep.out";
-    String nonExpGS = RESULT_DIR + "implicit.hw.ep.test";
-    String nonExpPrd = RESULT_DIR + "implicit.hw.ep.out";
+  /**
+   * The outcome of each candidate connective of a prediction file, in <code>conn.test</code>
+   * order, recorded by {@link #connCounts(String, String)} in the same pass.
+   */
+  private static Outcomes connOutcomes(final String dir, final String pdFile)
+      throws IOException {
+    connCounts(dir, pdFile);
+    return results(dir).get(pdFile + "#outcomes", new Callable<Outcomes>() {
+      @Override
+      public Outcomes call() throws IOException {
+        Outcomes outcomes = new Outcomes();
+        countConn(goldLabels(goldDir(dir), "conn.test", GoldFormat.LAST_TOKEN), dir + pdFile,
+            outcomes);
+        return outcomes;
+      }
+    });
+  }
 
-    int expCorrect = countExpOverall(new File(expGS), new File(expPrd));
-    int nonExpCorrect = countNonExplicit(new File(nonExpGS), new File(nonExpPrd));
-    int totalCorrect = expCorrect + nonExpCorrect;
+  /**
+   * Gold and predicted explicit connectives of a setting, the instances every explicit component
+   * is scored against. A connective the pipeline missed or made up counts as a gold or a predicted
+   * instance even though it never reaches the component's own files.
+   * 
+   * @param pdFile the connective classifier output, or null for gold standard connectives
+   */
+  private static Counts connectives(String dir, String pdFile) throws IOException {
+    int[] counts = connCounts(dir, pdFile == null ? "conn.hw.out" : pdFile);
+    int gold = counts[0] + counts[1];
+    return new Counts(gold, pdFile == null ? gold : counts[0] + counts[2], counts[0]);
+  }
 
-    double gsTotal = 922 + 1017;
-    double prdTotal = 918 + 1093;
+  /**
+   * Gold connectives without an explicit sense. They are listed with gold connectives in
+   * <code>exp.hw.test</code> and are not explicit relations.
+   */
+  private static int unannotatedConnectives(String dir) throws IOException {
+    return goldLabels(goldDir(dir), "exp.hw.test", GoldFormat.EXPLICIT).unannotated
+        .cardinality();
+  }
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, totalCorrect);
-    System.out.println(String.format("%.2f", metric[2]));
+  /**
+   * Correct instances of an explicit component, with the gold and predicted connectives of its
+   * setting, less the <code>unannotated</code> ones, as totals.
+   */
+  private static Counts explicitTotals(Counts counts, Counts connectives, int unannotated,
+      String pdFile) throws IOException {
+    Counts totals = new Counts(connectives.gold - unannotated, connectives.predicted - unannotated,
+        counts.correct);
+    totals.outcomes = counts.outcomes;
+    checkTotals(totals, counts.predicted, pdFile);
+    return totals;
   }
 
-  private static void overallAuto() throws IOException {
-    String expGS = RESULT_DIR + "overall.test";
-    String expPrd = RESULT_DIR + "overall.hw.ep.auto.out";
-    String nonExpGS = RESULT_DIR + "implicit.hw.ep.auto.test";
-    String nonExpPrd = RESULT_DIR + "implicit.hw.ep.auto.out";
+  /**
+   * Fails when the <code>predicted</code> instances of a component, counted on its own output, or
+   * its correct ones do not fit in the connective totals, as when the component output and the
+   * connective classifier output come from different runs.
+   */
+  private static void checkTotals(Counts totals, int predicted, String pdFile)
+      throws IOException {
+    if (predicted > totals.predicted || totals.correct > Math.min(totals.gold, totals.predicted)) {
+      throw new IOException(pdFile + " has " + predicted + " predicted and " + totals.correct
+          + " correct instances, more than its " + totals.gold + " gold and " + totals.predicted
+          + " predicted connectives");
+    }
+  }
 
-    int expCorrect = countExpOverall(new File(expGS), new File(expPrd));
-    int nonExpCorrect = countNonExplicit(new File(nonExpGS), new File(nonExpPrd));
-    int totalCorrect = expCorrect + nonExpCorrect;
+  /**
+   * Non-explicit counts of a prediction file, plus the gold and predicted relations that are not in
+   * the aligned files.
+   */
+  private static Counts nonExplicitCounts(final String gsDir, final String gsFile,
+      final String dir, final String pdFile) throws IOException {
+    Counts counts = results(dir).get(gsDir + gsFile + "|" + pdFile, new Callable<Counts>() {
+      @Override
+      public Counts call() throws IOException {
+        GoldLabels gold = goldLabels(gsDir, gsFile, GoldFormat.NON_EXPLICIT);
+        return countNonExplicit(gold, new File(dir + pdFile));
+      }
+    });
+    String name = pdFile.substring(0, pdFile.length() - ".out".length());
+    Counts totals = new Counts(counts.gold + unaligned(dir, name + ".gold"), counts.predicted
+        + unaligned(dir, name + ".predicted"), counts.correct);
+    totals.outcomes = counts.outcomes;
+    return totals;
+  }
 
-    double gsTotal = 922 + 1017;
-    double prdTotal = 912 + 1096;
+  /**
+   * Exact and partial match counts of the GS, EP and Auto argument extractor outputs of a run,
+   * scored in a single pass over the gold documents.
+   */
+  private static ArgExtCounts[] argExtCounts(final String dir) throws IOException {
+    return results(dir).get("argext", new Callable<ArgExtCounts[]>() {
+      @Override
+      public ArgExtCounts[] call() throws IOException {
+        File[] prdDirs = {new File(dir + "argext_hw/"), new File(dir + "argext_hw_ep/"),
+            new File(dir + "argext_hw_ep_auto/")};
+        if (EXTERNAL_BUDGET > 0) {
+          return OutOfCoreScorer.countArgExt(new File(goldDir(dir) + "argext_gs"),
+              EXTERNAL_BUDGET, RECORD_OUTCOMES, prdDirs);
+        }
+        return ArgExtScorer.score(argExtGold(goldDir(dir)), prdDirs);
+      }
+    });
+  }
 
-    double[] metric = calcMetrics(gsTotal, prdTotal, totalCorrect);
-    System.out.println(String.format("%.2f", metric[2]));
+  /**
+   * The gold documents of the argument extractor in <code>dir</code>, loaded once.
+   */
+  private static ArgExtGold argExtGold(final String dir) throws IOException {
+    File source = new File(dir + "argext_gs");
+    return scope(dir, source).get(dir + "argext_gs", new Callable<ArgExtGold>() {
+      @Override
+      public ArgExtGold call() throws IOException {
+        return GoldCache.argExt(new File(dir + "argext_gs"));
+      }
+    });
+  }
 
+  /**
+   * The folder of the gold standard the run in <code>dir</code> is scored against.
+   */
+  private static String goldDir(String dir) {
+    return SHARDS.contains(dir) ? dir : RESULT_DIR;
   }
 
-  private static int countExpOverall(File gsFile, File prdFile) throws IOException {
-    HashMap<String, String[]> map = new HashMap<String, String[]>();
+  /**
+   * Where gold standard data of <code>dir</code> parsed from <code>source</code> is kept. That of
+   * {@link #RESULT_DIR} is shared by every run, that of another folder belongs to its run, with the
+   * length and time of <code>source</code> to tell when it is stale.
+   */
+  private static SharedResults scope(String dir, File source) {
+    if (dir.equals(RESULT_DIR)) {
+      return SHARED;
+    }
+    ConcurrentHashMap<File, String> stamps = RUN_GOLD_STAMPS.get(dir);
+    if (stamps == null) {
+      ConcurrentHashMap<File, String> created = new ConcurrentHashMap<File, String>();
+      stamps = RUN_GOLD_STAMPS.putIfAbsent(dir, created);
+      if (stamps == null) {
+        stamps = created;
+      }
+    }
+    stamps.putIfAbsent(source, stamp(source));
+    SharedResults gold = RUN_GOLD.get(dir);
+    if (gold == null) {
+      SharedResults created = new SharedResults();
+      gold = RUN_GOLD.putIfAbsent(dir, created);
+      if (gold == null) {
+        gold = created;
+      }
+    }
+    return gold;
+  }
 
-    BufferedReader gsReader = null;
+  /**
+   * The parsed gold labels of a line-aligned gold file in <code>dir</code>, loaded once. Those of
+   * {@link #RESULT_DIR} are shared by every run, those of another run belong to it.
+   */
+  private static GoldLabels goldLabels(final String dir, final String name,
+      final GoldFormat format) throws IOException {
+    File source = CompressedInput.resolve(new File(dir + name));
+    return scope(dir, source).get(name + "|" + format, new Callable<GoldLabels>() {
+      @Override
+      public GoldLabels call() throws IOException {
+        return GoldCache.labels(new File(dir + name), format);
+      }
+    });
+  }
 
-    try {
-      gsReader = new BufferedReader(new InputStreamReader(new FileInputStream(gsFile), ENCODING));
-      String line;
-      while ((line = gsReader.readLine()) != null) {
-        String[] cols = line.split("\\|");
-        map.put(cols[0], cols);
+  /**
+   * The gold explicit relations of Table 9 in <code>dir</code>, loaded once.
+   */
+  private static OverallGold overallGold(final String dir) throws IOException {
+    File source = CompressedInput.resolve(new File(dir + "overall.test"));
+    return scope(dir, source).get(dir + "overall.test", new Callable<OverallGold>() {
+      @Override
+      public OverallGold call() throws IOException {
+        return GoldCache.overall(new File(dir + "overall.test"));
       }
+    });
+  }
 
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (gsReader != null) {
-        gsReader.close();
+  /**
+   * Instances of a pipeline run that are not in its aligned output files, such as non-explicit
+   * relations proposed between sentence pairs that have no gold relation. They are listed in an
+   * optional <code>unaligned.properties</code> in the results folder and are 0 when absent. Since
+   * they change the denominators, a run scored with others that have the file must have one too.
+   * 
+   * @throws IOException if the file is missing from <code>dir</code> but not from another run
+   */
+  private static int unaligned(final String dir, String key) throws IOException {
+    final File file = new File(dir + "unaligned.properties");
+    Properties unaligned = results(dir).get(file.getName(), new Callable<Properties>() {
+      @Override
+      public Properties call() throws IOException {
+        Properties properties = new Properties();
+        if (!file.exists()) {
+          for (String run : SHARDS.isEmpty() ? RUNS : SHARDS) {
+            if (new File(run, file.getName()).exists()) {
+              throw new IOException(dir + " has no " + file.getName() + " but " + run
+                  + " has, add one, empty when the run has no unaligned instances");
+            }
+          }
+        } else {
+          InputStream in = new FileInputStream(file);
+          try {
+            properties.load(in);
+          } finally {
+            in.close();
+          }
+        }
+        return properties;
       }
-    }
+    });
+    return Integer.parseInt(unaligned.getProperty(key, "0").trim());
+  }
+
+  static Counts countExpOverall(File gsFile, File prdFile) throws IOException {
+    return countExpOverall(OverallGold.parse(gsFile), prdFile);
+  }
 
-    int correct = 0;
-    BufferedReader prdReader = null;
+  /**
+   * Scores the explicit relations of a prediction file. Instances are recorded in gold order, each
+   * gold relation with the prediction that matched it, followed by the predictions that matched
+   * none, so the outcomes of two runs line up.
+   */
+  static Counts countExpOverall(OverallGold overall, File prdFile) throws IOException {
+    SpanIndex gold = overall.relations;
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    TokenCursor column = new TokenCursor();
+    TokenCursor sense = new TokenCursor();
+    // per gold relation, 0 when unmatched, 1 when matched and 2 when matched correctly
+    byte[] matches = new byte[gold.size()];
+    Counts unmatched = new Counts(RECORD_OUTCOMES);
+
+    StageMetrics.Probe probe = StageMetrics.start("countExpOverall", prdFile);
+    long lines = 0;
+    MappedLineReader prdReader = null;
     try {
-      prdReader = new BufferedReader(new InputStreamReader(new FileInputStream(prdFile), ENCODING));
-      String line;
+      prdReader = new MappedLineReader(prdFile);
+      CharSequence line;
       while ((line = prdReader.readLine()) != null) {
-        String[] cols = line.split("\\|");
-        String[] expCols = map.get(cols[0]);
-        if (expCols != null) {
-          if (cols[1].equals(expCols[1]) && cols[2].equals(expCols[2])) {
-            String[] tmp = expCols[3].split("£");
-            String prd = cols[3].split("£")[0];
-            if (tmp[0].equals(prd) || (tmp.length > 1 && tmp[1].equals(prd))) {
-              ++correct;
-            }
+        ++lines;
+        int id = gold.get(parseRelation(rel, line, prdFile, lines));
+        boolean correct = false;
+        if (id >= 0) {
+          if (gold.spanEquals(id, 1, rel) && gold.spanEquals(id, 2, rel)) {
+            OverallGold.senseColumn(column, line, rel);
+            sense.field(column, SENSE_SEPARATOR, 0);
+            correct = overall.matches(id, overall.senses.get(sense));
           }
         }
+        if (id >= 0 && matches[id] == 0) {
+          matches[id] = (byte) (correct ? 2 : 1);
+        } else {
+          // a second prediction of a relation still counts when correct
+          unmatched.add(false, true, correct);
+        }
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     } finally {
       if (prdReader != null) {
         prdReader.close();
       }
+      probe.end(prdReader == null ? 0 : prdReader.size(), lines);
     }
 
-    return correct;
+    Counts counts = new Counts(RECORD_OUTCOMES);
+    for (byte match : matches) {
+      counts.add(true, match > 0, match == 2);
+    }
+    return counts.add(unmatched);
   }
 
-  private static int countNonExplicit(File expFile, File prdFile) throws IOException {
-    int c = 0;
-    BufferedReader reader = null;
-    BufferedReader read = null;
-    try {
-      reader = new BufferedReader(new InputStreamReader(new FileInputStream(expFile), ENCODING));
-      read = new BufferedReader(new InputStreamReader(new FileInputStream(prdFile), ENCODING));
-      String eTmp;
-      String pTmp;
-      while ((eTmp = reader.readLine()) != null) {
-        pTmp = read.readLine();
-        String[] exp = eTmp.split("%%%")[0].split("\\s+");
-        String[] prd = pTmp.split("\\s+");
-
-        if (exp[0].equals(prd[prd.length - 1])
-            || (exp.length > 1 && exp[1].equals(prd[prd.length - 1]))) {
-          ++c;
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (reader != null) {
-        reader.close();
-      }
-      if (read != null) {
-        read.close();
-      }
-    }
-    return c;
+  static Counts countNonExplicit(File expFile, File prdFile) throws IOException {
+    return countNonExplicit(GoldLabels.parse(expFile, GoldFormat.NON_EXPLICIT), prdFile);
+  }
+
+  static Counts countNonExplicit(GoldLabels gold, File prdFile) throws IOException {
+    return countLabels(gold, prdFile, "countNonExplicit");
+  }
+
+  static Counts countExplicit(File expFile, File prdFile) throws IOException {
+    return countExplicit(GoldLabels.parse(expFile, GoldFormat.EXPLICIT), prdFile);
   }
 
-  private static int countExplicit(File expFile, File prdFile) throws IOException {
-    int c = 0;
+  static Counts countExplicit(GoldLabels gold, File prdFile) throws IOException {
+    return countLabels(gold, prdFile, "countExplicit");
+  }
 
-    BufferedReader reader = null;
-    BufferedReader read = null;
+  /**
+   * Scores the last token of every line of a prediction file against the gold labels of the same
+   * line. Lines that are not gold instances, connectives without a gold sense, are left out as the
+   * totals leave them out. The file is read on a {@link LinePipeline}, and the counts of its
+   * batches are added in file order.
+   */
+  private static Counts countLabels(final GoldLabels gold, final File prdFile, String stage)
+      throws IOException {
+    Counts counts = new Counts(RECORD_OUTCOMES);
+    StageMetrics.Probe probe = StageMetrics.start(stage, prdFile);
+    long lines = gold.checkAligned(prdFile);
+    final AtomicLong read = new AtomicLong();
     try {
-      reader = new BufferedReader(new InputStreamReader(new FileInputStream(expFile), ENCODING));
-      read = new BufferedReader(new InputStreamReader(new FileInputStream(prdFile), ENCODING));
-      String eTmp;
-      String pTmp;
-      while ((eTmp = reader.readLine()) != null) {
-        pTmp = read.readLine();
-        String[] exp = eTmp.split("\\s+");
-        String[] prd = pTmp.split("\\s+");
-        String[] tmp = exp[exp.length - 1].split("£");
-
-        if (tmp[0].equals(prd[prd.length - 1])
-            || (tmp.length > 1 && tmp[1].equals(prd[prd.length - 1]))) {
-          ++c;
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (reader != null) {
-        reader.close();
+      List<Counts> batches = LinePipeline.run(prdFile, PIPELINE_WORKERS,
+          new LinePipeline.Task<Counts>() {
+            @Override
+            public Counts score(LinePipeline.Batch batch) throws IOException {
+              gold.checkBatch(prdFile, batch);
+              read.addAndGet(batch.size());
+              Counts counts = new Counts(RECORD_OUTCOMES);
+              TokenCursor prd = new TokenCursor();
+              int first = (int) batch.first();
+              for (int j = 0; j < batch.size(); ++j) {
+                if (gold.isGold(first + j)) {
+                  prd.last(batch.line(j));
+                  counts.add(true, true, gold.matches(first + j, gold.labels.get(prd)));
+                }
+              }
+              return counts;
+            }
+          });
+      for (Counts batch : batches) {
+        counts.add(batch);
       }
-      if (read != null) {
-        read.close();
+      if (lines < 0) {
+        lines = read.get();
+        gold.checkLines(prdFile, lines);
       }
-
+    } finally {
+      probe.end(CompressedInput.resolve(prdFile).length(), Math.max(lines, read.get()));
     }
-
-    return c;
+    return counts;
   }
 
-  private static int[] countArgExt(File gsFile, File prdFile) throws IOException {
-    HashMap<String, String[]> map = new HashMap<String, String[]>();
 
-    BufferedReader gsReader = null;
+  static SpanIndex readArgExtGold(File gsFile) throws IOException {
+    SpanIndex gold = new SpanIndex(3);
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+
+    StageMetrics.Probe probe = StageMetrics.start("readArgExtGold", gsFile);
+    long lines = 0;
+    MappedLineReader gsReader = null;
     try {
-      gsReader = new BufferedReader(new InputStreamReader(new FileInputStream(gsFile), ENCODING));
-      String line;
+      gsReader = new MappedLineReader(gsFile);
+      CharSequence line;
       while ((line = gsReader.readLine()) != null) {
-        String[] cols = line.split("\\|");
-        map.put(cols[0], cols);
+        gold.put(parseRelation(rel, line, gsFile, ++lines));
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     } finally {
       if (gsReader != null) {
         gsReader.close();
       }
-
+      probe.end(gsReader == null ? 0 : gsReader.size(), lines);
     }
-    int[] counts = {0, 0, 0};
-    BufferedReader expReader = null;
+    return gold;
+  }
+
+  /**
+   * Scores the argument spans of a prediction file. Instances are recorded in gold order, each gold
+   * relation with the prediction that matched it, followed by the predictions that matched none.
+   */
+  static ArgExtCounts countArgExt(SpanIndex gold, File prdFile) throws IOException {
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    // per gold relation, the ArgExtCounts match bits of its prediction, -1 when unmatched
+    int[] matches = new int[gold.size()];
+    Arrays.fill(matches, -1);
+    ArgExtCounts unmatched = new ArgExtCounts(RECORD_OUTCOMES);
+    StageMetrics.Probe probe = StageMetrics.start("countArgExt", prdFile);
+    long lines = 0;
+    MappedLineReader expReader = null;
     try {
-      expReader = new BufferedReader(new InputStreamReader(new FileInputStream(prdFile), ENCODING));
-      String line;
+      expReader = new MappedLineReader(prdFile);
+      CharSequence line;
       while ((line = expReader.readLine()) != null) {
-        String[] cols = line.split("\\|");
-        String[] expCols = map.get(cols[0]);
-        if (expCols != null) {
-          if (cols[1].equals(expCols[1])) {
-            ++counts[0];
-          }
-          if (cols[2].equals(expCols[2])) {
-            ++counts[1];
-          }
-          if (cols[1].equals(expCols[1]) && cols[2].equals(expCols[2])) {
-            ++counts[2];
-          }
+        ++lines;
+        int id = gold.get(parseRelation(rel, line, prdFile, lines));
+        int match = argExtMatch(gold, id, rel);
+        if (id >= 0 && matches[id] < 0) {
+          matches[id] = match;
+        } else {
+          // a second prediction of a relation still counts when correct
+          unmatched.add(false, true, match);
         }
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     } finally {
       if (expReader != null) {
         expReader.close();
       }
+      probe.end(expReader == null ? 0 : expReader.size(), lines);
     }
-    return counts;
+
+    ArgExtCounts counts = new ArgExtCounts(RECORD_OUTCOMES);
+    for (int match : matches) {
+      counts.add(true, match >= 0, Math.max(match, 0));
+    }
+    return counts.add(unmatched);
   }
 
-  private static int countMatches(String expFile, String prdFile) throws IOException {
-    int c = 0;
-    BufferedReader eR = null, pR = null;
+  /**
+   * Parses line <code>number</code>, counted from 1, of <code>file</code> into <code>rel</code>.
+   * 
+   * @throws IOException naming the file and the line if the line is malformed
+   */
+  static SpanIndex.Relation parseRelation(SpanIndex.Relation rel, CharSequence line, File file,
+      long number) throws IOException {
     try {
-      eR = new BufferedReader(new InputStreamReader(new FileInputStream(expFile), ENCODING));
-      pR = new BufferedReader(new InputStreamReader(new FileInputStream(prdFile), ENCODING));
-
-      String eTmp;
-      String pTmp;
-      while ((pTmp = pR.readLine()) != null) {
-        eTmp = eR.readLine();
-
-        String[] exp = eTmp.split("\\s+");
-        String[] prd = pTmp.split("\\s+");
-        if (exp[exp.length - 1].equals(prd[prd.length - 1])) {
-          ++c;
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (eR != null) {
-        eR.close();
-      }
-      if (pR != null) {
-        pR.close();
-      }
+      return rel.parse(line);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file + ":" + number + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * The {@link ArgExtCounts} match bits of a predicted relation against gold relation
+   * <code>id</code>, 0 when it matched none.
+   */
+  static int argExtMatch(SpanIndex gold, int id, SpanIndex.Relation rel) {
+    if (id < 0) {
+      return 0;
     }
-    return c;
+    boolean arg1 = gold.spanEquals(id, 1, rel);
+    boolean arg2 = gold.spanEquals(id, 2, rel);
+    int match = 0;
+    match |= arg1 ? ArgExtCounts.ARG1 : 0;
+    match |= arg2 ? ArgExtCounts.ARG2 : 0;
+    match |= arg1 || gold.spanOverlaps(id, 1, rel) ? ArgExtCounts.PARTIAL_ARG1 : 0;
+    match |= arg2 || gold.spanOverlaps(id, 2, rel) ? ArgExtCounts.PARTIAL_ARG2 : 0;
+    return match;
+  }
+
+  static Counts countMatches(String expFile, String prdFile) throws IOException {
+    return countMatches(GoldLabels.parse(new File(expFile), GoldFormat.LAST_TOKEN), prdFile);
+  }
+
+  static Counts countMatches(GoldLabels gold, String prdFile) throws IOException {
+    return countLabels(gold, new File(prdFile), "countMatches");
+  }
+
+
+  static int[] countConn(String gsFile, String pdFile) throws IOException {
+    return countConn(GoldLabels.parse(new File(gsFile), GoldFormat.LAST_TOKEN), pdFile, null);
   }
 
-  private static int[] countConn(String gsFile, String pdFile) throws IOException {
+  /**
+   * @param outcomes receives the outcome of each candidate connective, in line order, or null
+   */
+  static int[] countConn(final GoldLabels gold, final String pdFile, Outcomes outcomes)
+      throws IOException {
+    final int[] classes = connClasses(gold);
+    // written by the batch tasks at their own lines, read once the pipeline is done
+    final byte[] flags = outcomes == null ? null : new byte[gold.size];
     int tp = 0, fn = 0, fp = 0, tn = 0;
-    BufferedReader gsRead = null;
-    BufferedReader pdRead = null;
+    StageMetrics.Probe probe = StageMetrics.start("countConn", pdFile);
+    long lines = gold.checkAligned(new File(pdFile));
+    final AtomicLong read = new AtomicLong();
     try {
-      gsRead = new BufferedReader(new InputStreamReader(new FileInputStream(gsFile), ENCODING));
-      pdRead = new BufferedReader(new InputStreamReader(new FileInputStream(pdFile), ENCODING));
-      String expected;
-      while ((expected = gsRead.readLine()) != null) {
-        String predicted = pdRead.readLine();
-
-        int expConn = Integer.parseInt(expected);
-        int prdConn = Integer.parseInt(predicted.substring(predicted.lastIndexOf(' ')).trim());
-
-        if (prdConn == 1 && expConn == 1) {
-          ++tp;
-        } else if (prdConn == 0 && expConn == 1) {
-          ++fn;
-        } else if (prdConn == 1 && expConn == 0) {
-          ++fp;
-        } else if (prdConn == 0 && expConn == 0) {
-          ++tn;
-        }
+      List<int[]> batches = LinePipeline.run(new File(pdFile), PIPELINE_WORKERS,
+          new LinePipeline.Task<int[]>() {
+            @Override
+            public int[] score(LinePipeline.Batch batch) throws IOException {
+              gold.checkBatch(new File(pdFile), batch);
+              read.addAndGet(batch.size());
+              int tp = 0, fn = 0, fp = 0, tn = 0;
+              TokenCursor prd = new TokenCursor();
+              int first = (int) batch.first();
+              for (int j = 0; j < batch.size(); ++j) {
+                int expConn = classes[gold.first[first + j]];
+                int prdConn = prd.last(batch.line(j)).parseInt();
+
+                int flag = 0;
+                if (prdConn == 1 && expConn == 1) {
+                  ++tp;
+                  flag = Outcomes.GOLD | Outcomes.PREDICTED | Outcomes.CORRECT;
+                } else if (prdConn == 0 && expConn == 1) {
+                  ++fn;
+                  flag = Outcomes.GOLD;
+                } else if (prdConn == 1 && expConn == 0) {
+                  ++fp;
+                  flag = Outcomes.PREDICTED;
+                } else if (prdConn == 0 && expConn == 0) {
+                  ++tn;
+                }
+                if (flags != null) {
+                  flags[first + j] = (byte) flag;
+                }
+              }
+              return new int[] {tp, fn, fp, tn};
+            }
+          });
+      for (int[] batch : batches) {
+        tp += batch[0];
+        fn += batch[1];
+        fp += batch[2];
+        tn += batch[3];
       }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (gsRead != null) {
-        gsRead.close();
+      if (lines < 0) {
+        lines = read.get();
+        gold.checkLines(new File(pdFile), lines);
       }
-      if (pdRead != null) {
-        pdRead.close();
+      if (flags != null) {
+        for (byte flag : flags) {
+          outcomes.add(flag);
+        }
       }
+    } finally {
+      probe.end(CompressedInput.resolve(new File(pdFile)).length(), Math.max(lines, read.get()));
     }
 
     return new int[] {tp, fn, fp, tn};
   }
 
-  private static double[] calcMetrics(double gsTotal, double prdTotal, int correct) {
+
+  /**
+   * The class, 0 or 1, of each distinct connective classifier gold label, parsed once.
+   */
+  static int[] connClasses(GoldLabels gold) {
+    int[] classes = new int[gold.labels.size()];
+    for (int label = 0; label < classes.length; ++label) {
+      classes[label] = Integer.parseInt(gold.labels.label(label));
+    }
+    return classes;
+  }
+
+  private static double[] calcMetrics(Counts counts) {
+    double gsTotal = counts.gold;
+    double prdTotal = counts.predicted;
+    int correct = counts.correct;
 
     double p = prdTotal == 0 ? 0 : (1.0 * correct / prdTotal) * 100;
     double r = gsTotal == 0 ? 0 : (1.0 * correct / gsTotal) * 100;
     double f1 = (2 * p * r) / (r + p);
 
-    return new double[] {p, r, f1};
+    return withInterval(new double[] {p, r, f1}, counts);
+  }
+
+  /**
+   * Appends the bootstrap confidence interval of the F1 of <code>totals</code> to
+   * <code>metric</code>, unless bootstrapping is off.
+   */
+  private static double[] withInterval(double[] metric, Counts totals) {
+    if (RESAMPLES == 0) {
+      return metric;
+    }
+    Outcomes outcomes = outcomes(totals);
+    double[] interval = outcomes == null ? new double[] {Double.NaN, Double.NaN} : Bootstrap
+        .f1Interval(outcomes, RESAMPLES, CONFIDENCE, SEED);
+    double[] result = Arrays.copyOf(metric, metric.length + 2);
+    result[metric.length] = interval[0];
+    result[metric.length + 1] = interval[1];
+    return result;
+  }
+
+  /**
+   * The recorded outcomes of <code>totals</code> fitted to the totals, so instances that are only
+   * counted, not scored, are resampled as well, or null when the totals cannot be resampled.
+   */
+  private static Outcomes outcomes(Counts totals) {
+    return (totals.outcomes == null ? new Outcomes() : totals.outcomes).fit(totals);
   }
 
 }
@@ -0,0 +1,236 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import sg.edu.nus.comp.pdtb.util.CompressedInput;
+import sg.edu.nus.comp.pdtb.util.ExternalJoin;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * Scores the explicit relations of Table 9 and the argument spans of Table 5 out of core, for gold
+ * sets that do not fit in the heap. Gold and predicted relations are joined on their key through
+ * an {@link ExternalJoin} instead of a {@link SpanIndex} of the whole gold side, and each key is
+ * scored as {@link Main#countExpOverall(OverallGold, File)} and
+ * {@link Main#countArgExt(SpanIndex, File)} do, so the counts are the same. Instances are recorded
+ * in key order, each gold relation with the prediction that matched it, followed by the
+ * predictions that matched none.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class OutOfCoreScorer {
+
+  private static final String SENSE_SEPARATOR = MappedLineReader.byteView("£");
+
+  private OutOfCoreScorer() {}
+
+  /**
+   * Scores the explicit relations of <code>prdFile</code> against <code>gsFile</code>, buffering
+   * at most <code>budget</code> bytes of lines.
+   */
+  static Counts countExpOverall(File gsFile, File prdFile, long budget, boolean record)
+      throws IOException {
+    final Counts counts = new Counts(record);
+    final Counts unmatched = new Counts(record);
+    StageMetrics.Probe probe = StageMetrics.start("countExpOverallOutOfCore", prdFile);
+    ExternalJoin join = new ExternalJoin(budget, null);
+    long lines = 0;
+    try {
+      SpanIndex.Relation rel = new SpanIndex.Relation(3);
+      add(join, true, gsFile, rel, -1);
+      lines = add(join, false, prdFile, rel, -1);
+      join.join(new ExternalJoin.Group() {
+
+        private final SpanIndex index = new SpanIndex(3);
+        private final SpanIndex.Relation rel = new SpanIndex.Relation(3);
+        private final SpanIndex.Relation goldRel = new SpanIndex.Relation(3);
+        private final TokenCursor column = new TokenCursor();
+        private final TokenCursor sense = new TokenCursor();
+        private final TokenCursor goldColumn = new TokenCursor();
+        private final TokenCursor goldSense = new TokenCursor();
+        // per gold relation of the key, as in Main.countExpOverall
+        private byte[] matches = new byte[4];
+        // per gold relation of the key, its line, the last one of a repeated key
+        private String[] goldLines = new String[4];
+
+        @Override
+        public void join(List<String> gold, List<String> predicted) {
+          index.clear();
+          if (goldLines.length < gold.size()) {
+            goldLines = new String[2 * gold.size()];
+          }
+          for (String line : gold) {
+            goldLines[index.put(rel.parse(line))] = line;
+          }
+          if (matches.length < index.size()) {
+            matches = new byte[2 * index.size()];
+          }
+          Arrays.fill(matches, (byte) 0);
+          for (String line : predicted) {
+            int id = index.get(rel.parse(line));
+            boolean correct = false;
+            if (id >= 0) {
+              if (index.spanEquals(id, 1, rel) && index.spanEquals(id, 2, rel)) {
+                OverallGold.senseColumn(column, line, rel);
+                sense.field(column, SENSE_SEPARATOR, 0);
+                goldRel.parse(goldLines[id]);
+                OverallGold.senseColumn(goldColumn, goldLines[id], goldRel);
+                correct = isGoldSense(goldColumn, goldSense, sense);
+              }
+            }
+            if (id >= 0 && matches[id] == 0) {
+              matches[id] = (byte) (correct ? 2 : 1);
+            } else {
+              // a second prediction of a relation still counts when correct
+              unmatched.add(false, true, correct);
+            }
+          }
+          for (int id = 0; id < index.size(); ++id) {
+            counts.add(true, matches[id] > 0, matches[id] == 2);
+          }
+        }
+      });
+    } finally {
+      join.close();
+      probe.end(prdFile.length(), lines);
+    }
+    return counts.add(unmatched);
+  }
+
+  /**
+   * Scores the argument spans of every prediction directory against the gold documents of
+   * <code>gsDir</code>, buffering at most <code>budget</code> bytes of lines.
+   */
+  static ArgExtCounts[] countArgExt(File gsDir, long budget, boolean record, File... prdDirs)
+      throws IOException {
+    File[] docs = ArgExtGold.listDocs(gsDir);
+    ArgExtCounts[] counts = new ArgExtCounts[prdDirs.length];
+    for (int d = 0; d < prdDirs.length; ++d) {
+      counts[d] = countArgExt(docs, prdDirs[d], budget, record);
+    }
+    return counts;
+  }
+
+  private static ArgExtCounts countArgExt(File[] docs, File prdDir, long budget, boolean record)
+      throws IOException {
+    final ArgExtCounts counts = new ArgExtCounts(record);
+    final ArgExtCounts unmatched = new ArgExtCounts(record);
+    StageMetrics.Probe probe = StageMetrics.start("countArgExtOutOfCore", prdDir);
+    ExternalJoin join = new ExternalJoin(budget, null);
+    long lines = 0;
+    try {
+      SpanIndex.Relation rel = new SpanIndex.Relation(3);
+      // the documents have no doc: prefix, so the relations are keyed on the document index
+      for (int i = 0; i < docs.length; ++i) {
+        add(join, true, docs[i], rel, i);
+        String name = CompressedInput.plainName(docs[i].getName());
+        lines += add(join, false, new File(prdDir, name), rel, i);
+      }
+      join.join(new ExternalJoin.Group() {
+
+        private final SpanIndex index = new SpanIndex(3);
+        private final SpanIndex.Relation rel = new SpanIndex.Relation(3);
+        // per gold relation of the key, as in Main.countArgExt
+        private int[] matches = new int[4];
+
+        @Override
+        public void join(List<String> gold, List<String> predicted) {
+          index.clear();
+          for (String line : gold) {
+            index.put(rel.parse(line));
+          }
+          if (matches.length < index.size()) {
+            matches = new int[2 * index.size()];
+          }
+          Arrays.fill(matches, -1);
+          for (String line : predicted) {
+            int id = index.get(rel.parse(line));
+            int match = Main.argExtMatch(index, id, rel);
+            if (id >= 0 && matches[id] < 0) {
+              matches[id] = match;
+            } else {
+              // a second prediction of a relation still counts when correct
+              unmatched.add(false, true, match);
+            }
+          }
+          for (int id = 0; id < index.size(); ++id) {
+            counts.add(true, matches[id] >= 0, Math.max(matches[id], 0));
+          }
+        }
+      });
+    } finally {
+      join.close();
+      probe.end(0, lines);
+    }
+    return counts.add(unmatched);
+  }
+
+  /**
+   * Adds the relations of a file to one side of the join, keyed on the document <code>doc</code>,
+   * or on the <code>doc:</code> prefix of each line when it is -1.
+   * 
+   * @return the number of lines added
+   */
+  private static long add(ExternalJoin join, boolean gold, File file, SpanIndex.Relation rel,
+      int doc) throws IOException {
+    long lines = 0;
+    MappedLineReader reader = null;
+    try {
+      reader = new MappedLineReader(file);
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        Main.parseRelation(rel, line, file, lines + 1);
+        if (doc >= 0) {
+          rel.setDoc(doc);
+        }
+        if (gold) {
+          join.addGold(rel, line);
+        } else {
+          join.addPredicted(rel, line);
+        }
+        ++lines;
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Whether the sense under <code>sense</code> is one of the alternative gold senses of
+   * <code>goldColumn</code>, as {@link OverallGold#matches(int, int)} tells for interned senses.
+   */
+  private static boolean isGoldSense(TokenCursor goldColumn, TokenCursor goldSense,
+      TokenCursor sense) {
+    for (int i = 0; i < 2; ++i) {
+      if (goldSense.field(goldColumn, SENSE_SEPARATOR, i) && goldSense.contentEquals(sense)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,136 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Per-instance outcomes of a scoring pass, one byte of {@link #GOLD}, {@link #PREDICTED} and
+ * {@link #CORRECT} flags per instance, in the order the instances were scored. They are kept so
+ * that the instances can be resampled, the counts alone only give a point estimate.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class Outcomes {
+
+  static final int GOLD = 1;
+  static final int PREDICTED = 2;
+  static final int CORRECT = 4;
+
+  private byte[] flags = new byte[64];
+  private int size;
+  /**
+   * Instances appended by {@link #fit(Counts)} after the recorded ones.
+   */
+  private int padding;
+
+  void add(int flag) {
+    if (size == flags.length) {
+      flags = Arrays.copyOf(flags, 2 * size);
+    }
+    flags[size++] = (byte) flag;
+  }
+
+  void add(int flag, int times) {
+    for (int i = 0; i < times; ++i) {
+      add(flag);
+    }
+  }
+
+  Outcomes append(Outcomes other) {
+    for (int i = 0; i < other.size; ++i) {
+      add(other.flags[i]);
+    }
+    return this;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Instances recorded while scoring, the first ones, without the padding of {@link #fit(Counts)}.
+   * Only these stand for an instance of the scored files.
+   */
+  int recorded() {
+    return size - padding;
+  }
+
+  int flag(int index) {
+    return flags[index];
+  }
+
+  /**
+   * A trimmed copy of the flags, one per instance.
+   */
+  byte[] toArray() {
+    return Arrays.copyOf(flags, size);
+  }
+
+  /**
+   * The instances with a prediction, in the same order. Used where the gold total is not counted
+   * on the scored instances, such as argument spans scored against gold connectives.
+   */
+  Outcomes predicted() {
+    Outcomes outcomes = new Outcomes();
+    for (int i = 0; i < size; ++i) {
+      if ((flags[i] & PREDICTED) != 0) {
+        outcomes.add(flags[i]);
+      }
+    }
+    return outcomes;
+  }
+
+  /**
+   * Returns a copy of the outcomes padded up to <code>totals</code>. Totals can include instances
+   * that never reach the scored files, such as a connective the pipeline missed. The recorded
+   * outcomes are kept as they are and each gap is filled with padding instances of its own. A
+   * missing correct instance is a gold, predicted and correct one, so that it counts toward both
+   * denominators as well, and the rest of the gold and predicted gaps are gold only and predicted
+   * only instances.
+   * 
+   * @return the padded outcomes, or null when the totals have more missing correct instances than
+   *         missing gold or predicted ones, such as matches listed as unaligned of instances that
+   *         are already counted. Such totals cannot be resampled without bias.
+   * @throws IllegalStateException if the recorded outcomes exceed the totals
+   */
+  Outcomes fit(Counts totals) {
+    int gold = 0, predicted = 0, correct = 0;
+    for (int i = 0; i < size; ++i) {
+      gold += flags[i] & GOLD;
+      predicted += (flags[i] & PREDICTED) >> 1;
+      correct += (flags[i] & CORRECT) >> 2;
+    }
+    if (gold > totals.gold || predicted > totals.predicted || correct > totals.correct) {
+      throw new IllegalStateException("Recorded outcomes gold=" + gold + " predicted=" + predicted
+          + " correct=" + correct + " exceed " + totals);
+    }
+    int missing = totals.correct - correct;
+    if (missing > totals.gold - gold || missing > totals.predicted - predicted) {
+      return null;
+    }
+
+    Outcomes outcomes = new Outcomes().append(this);
+    outcomes.add(GOLD | PREDICTED | CORRECT, missing);
+    outcomes.add(GOLD, totals.gold - gold - missing);
+    outcomes.add(PREDICTED, totals.predicted - predicted - missing);
+    outcomes.padding = outcomes.size - size;
+    return outcomes;
+  }
+}
@@ -0,0 +1,118 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import sg.edu.nus.comp.pdtb.util.BinaryColumns;
+import sg.edu.nus.comp.pdtb.util.LabelTable;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * The gold relations of <code>overall.test</code>, indexed by span, with the alternative gold
+ * senses of each relation as one {@link LabelTable#bit(int) bit} per interned sense id.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class OverallGold {
+
+  private static final String SENSE_SEPARATOR = MappedLineReader.byteView("£");
+
+  final SpanIndex relations;
+  final LabelTable senses;
+  final long[] gold;
+
+  private OverallGold(SpanIndex relations, LabelTable senses, long[] gold) {
+    this.relations = relations;
+    this.senses = senses;
+    this.gold = gold;
+  }
+
+  static OverallGold parse(File file) throws IOException {
+    SpanIndex relations = new SpanIndex(3);
+    LabelTable senses = new LabelTable();
+    long[] gold = new long[1024];
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    TokenCursor column = new TokenCursor();
+    TokenCursor sense = new TokenCursor();
+
+    StageMetrics.Probe probe = StageMetrics.start("parseOverallGold", file);
+    long lines = 0;
+    MappedLineReader reader = null;
+    try {
+      reader = new MappedLineReader(file);
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        int id = relations.put(Main.parseRelation(rel, line, file, ++lines));
+        if (id == gold.length) {
+          gold = Arrays.copyOf(gold, 2 * id);
+        }
+        senseColumn(column, line, rel);
+        int a = sense.field(column, SENSE_SEPARATOR, 0) ? senses.intern(sense) : -1;
+        int b = sense.field(column, SENSE_SEPARATOR, 1) ? senses.intern(sense) : -1;
+        gold[id] = LabelTable.bit(a) | LabelTable.bit(b);
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+      probe.end(reader == null ? 0 : reader.size(), lines);
+    }
+    GoldLabels.checkLabelCount(file, senses);
+    return new OverallGold(relations, senses, gold);
+  }
+
+  /**
+   * Whether <code>sense</code>, an id of {@link #senses} or -1, is a gold sense of relation
+   * <code>id</code>.
+   */
+  boolean matches(int id, int sense) {
+    return (gold[id] & LabelTable.bit(sense)) != 0;
+  }
+
+  /**
+   * Positions <code>column</code> on the sense column following the three span columns, which is
+   * empty when the line has none.
+   */
+  static void senseColumn(TokenCursor column, CharSequence line, SpanIndex.Relation rel) {
+    if (rel.columnCount() > 3) {
+      column.span(line, rel.columnStart(3), rel.columnEnd(3));
+    } else {
+      column.span(line, line.length(), line.length());
+    }
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    relations.writeTo(out);
+    senses.writeTo(out);
+    BinaryColumns.writeLongs(out, gold, relations.size());
+  }
+
+  static OverallGold readFrom(ByteBuffer in) {
+    SpanIndex relations = SpanIndex.readFrom(in);
+    LabelTable senses = LabelTable.readFrom(in);
+    return new OverallGold(relations, senses, BinaryColumns.readLongs(in));
+  }
+}
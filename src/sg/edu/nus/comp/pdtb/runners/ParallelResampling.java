@@ -0,0 +1,80 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads random resamples across the cores. The resamples are split into a fixed number of
+ * chunks, each with its own generator split off the seed, so the results depend on the seed only
+ * and not on the number of cores.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ParallelResampling {
+
+  /**
+   * A share of the resamples, drawn with its own generator.
+   */
+  interface Chunk {
+    void run(int from, int to, SplittableRandom rng);
+  }
+
+  private static final int CHUNKS = 64;
+
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private ParallelResampling() {}
+
+  /**
+   * Runs resamples <code>[0, resamples)</code> in chunks and waits for all of them.
+   */
+  static void run(int resamples, long seed, final Chunk chunk) {
+    SplittableRandom root = new SplittableRandom(seed);
+    List<Callable<Void>> chunks = new ArrayList<Callable<Void>>(CHUNKS);
+    for (int c = 0; c < CHUNKS; ++c) {
+      final SplittableRandom rng = root.split();
+      final int from = (int) ((long) resamples * c / CHUNKS);
+      final int to = (int) ((long) resamples * (c + 1) / CHUNKS);
+      chunks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          chunk.run(from, to, rng);
+          return null;
+        }
+      });
+    }
+    for (Future<Void> result : POOL.invokeAll(chunks)) {
+      try {
+        result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import sg.edu.nus.comp.pdtb.runners.Main.Score;
+
+/**
+ * The counts behind every score of one or more shards, such as the PDTB sections of a
+ * cross-validation, from which micro and macro averages over the shards are computed. A record
+ * holds, per score, the summed gold, predicted and correct instances of each F1 and the summed
+ * metrics of its shards, so records merge by addition in any order and grouping, whether the
+ * shards were scored by threads of one process or by separate ones writing records to files.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class PartialCounts {
+
+  private static final int MAGIC = 0x4a4e5043;
+  private static final int VERSION = 1;
+
+  private static final Score[] SCORES = Score.values();
+
+  private int shards;
+  /**
+   * Per score, gold, predicted and correct instances of each F1 followed by all instances, which
+   * the connective classifier accuracy needs.
+   */
+  private final long[][] counts = new long[SCORES.length][];
+  /**
+   * Per score, the sum of each metric over the shards.
+   */
+  private final double[][] metrics = new double[SCORES.length][];
+
+  PartialCounts() {
+    for (Score score : SCORES) {
+      counts[score.ordinal()] = new long[3 * f1Count(score) + 1];
+      metrics[score.ordinal()] = new double[score.metricNames().length];
+    }
+  }
+
+  /**
+   * Adds a score of one shard.
+   * 
+   * @param totals the totals of each F1 of the score
+   * @param metric the metrics of the score, as named by {@link Score#metricNames()}
+   * @param instances all instances of the score, 0 unless it has an accuracy
+   */
+  void add(Score score, Counts[] totals, double[] metric, long instances) {
+    long[] count = counts[score.ordinal()];
+    for (int i = 0; i < totals.length; ++i) {
+      count[3 * i] += totals[i].gold;
+      count[3 * i + 1] += totals[i].predicted;
+      count[3 * i + 2] += totals[i].correct;
+    }
+    count[count.length - 1] += instances;
+    double[] sums = metrics[score.ordinal()];
+    for (int i = 0; i < sums.length; ++i) {
+      sums[i] += metric[i];
+    }
+  }
+
+  /**
+   * Ends the shard whose scores were added.
+   */
+  void endShard() {
+    ++shards;
+  }
+
+  /**
+   * Adds the shards of <code>other</code> to this record.
+   */
+  PartialCounts merge(PartialCounts other) {
+    shards += other.shards;
+    for (int s = 0; s < SCORES.length; ++s) {
+      for (int i = 0; i < counts[s].length; ++i) {
+        counts[s][i] += other.counts[s][i];
+      }
+      for (int i = 0; i < metrics[s].length; ++i) {
+        metrics[s][i] += other.metrics[s][i];
+      }
+    }
+    return this;
+  }
+
+  int shards() {
+    return shards;
+  }
+
+  /**
+   * The metrics of a score computed from the counts summed over the shards.
+   */
+  double[] micro(Score score) {
+    long[] count = counts[score.ordinal()];
+    String[] names = score.metricNames();
+    double[] micro = new double[names.length];
+    if (names[0].equals("accuracy")) {
+      long errors = count[0] + count[1] - 2 * count[2];
+      long instances = count[count.length - 1];
+      micro[0] = instances == 0 ? 0 : 100.0 * (instances - errors) / instances;
+      micro[1] = f1(count, 0);
+    } else if (f1Count(score) > 1) {
+      for (int i = 0; i < micro.length; ++i) {
+        micro[i] = f1(count, i);
+      }
+    } else {
+      micro[0] = count[1] == 0 ? 0 : 100.0 * count[2] / count[1];
+      micro[1] = count[0] == 0 ? 0 : 100.0 * count[2] / count[0];
+      micro[2] = f1(count, 0);
+    }
+    return micro;
+  }
+
+  /**
+   * The metrics of a score averaged over the shards.
+   */
+  double[] macro(Score score) {
+    double[] macro = metrics[score.ordinal()].clone();
+    for (int i = 0; i < macro.length; ++i) {
+      macro[i] = shards == 0 ? 0 : macro[i] / shards;
+    }
+    return macro;
+  }
+
+  /**
+   * F1 in percent of the <code>i</code>-th counts, with the same rounding as the tables.
+   */
+  private static double f1(long[] count, int i) {
+    double p = count[3 * i + 1] == 0 ? 0 : 100.0 * count[3 * i + 2] / count[3 * i + 1];
+    double r = count[3 * i] == 0 ? 0 : 100.0 * count[3 * i + 2] / count[3 * i];
+    return p + r == 0 ? 0 : 2 * p * r / (p + r);
+  }
+
+  /**
+   * The number of F1s of a score, 3 for the argument extractor and 1 otherwise.
+   */
+  private static int f1Count(Score score) {
+    int f1s = 0;
+    for (String name : score.metricNames()) {
+      if (name.toLowerCase().endsWith("f1")) {
+        ++f1s;
+      }
+    }
+    return f1s;
+  }
+
+  void print() {
+    System.out.println("Micro and macro averages over " + shards + " shard"
+        + (shards == 1 ? "" : "s"));
+    System.out.println("___________________________________");
+    System.out.println(String.format("%-30s%-12s%8s%8s", "Score", "Metric", "Micro", "Macro"));
+    for (Score score : SCORES) {
+      String[] names = score.metricNames();
+      double[] micro = micro(score);
+      double[] macro = macro(score);
+      for (int i = 0; i < names.length; ++i) {
+        System.out.println(String.format("%-30s%-12s%8.2f%8.2f", i == 0 ? score.label
+            .replaceAll("\\s+", " ") : "", names[i], micro[i], macro[i]));
+      }
+    }
+    System.out.println();
+  }
+
+  void write(File file) throws IOException {
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(shards);
+      out.writeInt(SCORES.length);
+      for (Score score : SCORES) {
+        out.writeUTF(score.name());
+        long[] count = counts[score.ordinal()];
+        out.writeInt(count.length);
+        for (long value : count) {
+          out.writeLong(value);
+        }
+        double[] sums = metrics[score.ordinal()];
+        out.writeInt(sums.length);
+        for (double value : sums) {
+          out.writeDouble(value);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  static PartialCounts read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a partial counts record of this version");
+      }
+      PartialCounts partial = new PartialCounts();
+      partial.shards = in.readInt();
+      if (in.readInt() != SCORES.length) {
+        throw new IOException(file + " has records of other scores");
+      }
+      for (Score score : SCORES) {
+        long[] count = partial.counts[score.ordinal()];
+        if (!in.readUTF().equals(score.name()) || in.readInt() != count.length) {
+          throw new IOException(file + " has records of other scores");
+        }
+        for (int i = 0; i < count.length; ++i) {
+          count[i] = in.readLong();
+        }
+        double[] sums = partial.metrics[score.ordinal()];
+        if (in.readInt() != sums.length) {
+          throw new IOException(file + " has records of other scores");
+        }
+        for (int i = 0; i < sums.length; ++i) {
+          sums[i] = in.readDouble();
+        }
+      }
+      return partial;
+    } finally {
+      in.close();
+    }
+  }
+}
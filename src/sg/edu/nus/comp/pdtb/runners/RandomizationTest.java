@@ -0,0 +1,140 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paired approximate randomization test of the F1 difference between two systems scored on the
+ * same instances. Each permutation swaps the outcomes of the two systems on every instance with
+ * probability 1/2, and the p-value is the share of permutations whose absolute F1 difference is at
+ * least the observed one.
+ * 
+ * Only instances on which the systems differ can change the totals when swapped, so a permutation
+ * updates the totals from those instances alone. Padding instances, which stand for counts that
+ * never reached the scored files, have no counterpart in the other run and are never swapped.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class RandomizationTest {
+
+  /**
+   * Permutations of a test unless set otherwise.
+   */
+  static final int PERMUTATIONS = 10000;
+
+  private RandomizationTest() {}
+
+  /**
+   * Returns the two-sided p-value of the F1 difference of <code>a</code> and <code>b</code>, paired
+   * instance by instance over their recorded instances. Returns NaN when the runs did not record
+   * the same number of instances, or were padded to their totals differently, since part of the
+   * difference then comes from instances that cannot be paired.
+   */
+  static double pValue(Outcomes a, Outcomes b, int permutations, long seed) {
+    int n = a.recorded();
+    if (n != b.recorded()) {
+      return Double.NaN;
+    }
+    int differing = 0;
+    for (int i = 0; i < n; ++i) {
+      if (a.flag(i) != b.flag(i)) {
+        ++differing;
+      }
+    }
+    // per differing instance, the change of the totals of a when it takes the outcome of b
+    final int[] gold = new int[differing];
+    final int[] predicted = new int[differing];
+    final int[] correct = new int[differing];
+    final int[] totalsA = new int[3];
+    final int[] totalsB = new int[3];
+    for (int i = 0, d = 0; i < n; ++i) {
+      int fa = a.flag(i);
+      int fb = b.flag(i);
+      add(totalsA, fa);
+      add(totalsB, fb);
+      if (fa != fb) {
+        gold[d] = (fb & Outcomes.GOLD) - (fa & Outcomes.GOLD);
+        predicted[d] = ((fb & Outcomes.PREDICTED) - (fa & Outcomes.PREDICTED)) >> 1;
+        correct[d] = ((fb & Outcomes.CORRECT) - (fa & Outcomes.CORRECT)) >> 2;
+        ++d;
+      }
+    }
+    int[] paddingA = new int[3];
+    int[] paddingB = new int[3];
+    for (int i = n; i < a.size(); ++i) {
+      add(paddingA, a.flag(i));
+    }
+    for (int i = n; i < b.size(); ++i) {
+      add(paddingB, b.flag(i));
+    }
+    if (!Arrays.equals(paddingA, paddingB)) {
+      return Double.NaN;
+    }
+    for (int i = 0; i < 3; ++i) {
+      totalsA[i] += paddingA[i];
+      totalsB[i] += paddingB[i];
+    }
+    final double observed = Math.abs(diff(totalsA, totalsB, 0, 0, 0));
+
+    final AtomicInteger extreme = new AtomicInteger();
+    ParallelResampling.run(permutations, seed, new ParallelResampling.Chunk() {
+      @Override
+      public void run(int from, int to, SplittableRandom rng) {
+        int count = 0;
+        for (int r = from; r < to; ++r) {
+          int g = 0, p = 0, c = 0;
+          long bits = 0;
+          for (int d = 0; d < gold.length; ++d) {
+            if ((d & 63) == 0) {
+              bits = rng.nextLong();
+            }
+            if ((bits & 1) != 0) {
+              g += gold[d];
+              p += predicted[d];
+              c += correct[d];
+            }
+            bits >>>= 1;
+          }
+          // rounding noise must not turn the identity permutation into a less extreme one
+          if (Math.abs(diff(totalsA, totalsB, g, p, c)) >= observed - 1e-9) {
+            ++count;
+          }
+        }
+        extreme.addAndGet(count);
+      }
+    });
+    return (extreme.get() + 1.0) / (permutations + 1.0);
+  }
+
+  private static void add(int[] totals, int flag) {
+    totals[0] += flag & Outcomes.GOLD;
+    totals[1] += (flag & Outcomes.PREDICTED) >> 1;
+    totals[2] += (flag & Outcomes.CORRECT) >> 2;
+  }
+
+  /**
+   * F1 of b less F1 of a after the swapped instances moved <code>g, p, c</code> from a to b.
+   */
+  private static double diff(int[] a, int[] b, int g, int p, int c) {
+    return Counts.f1(b[0] - g, b[1] - p, b[2] - c) - Counts.f1(a[0] + g, a[1] + p, a[2] + c);
+  }
+}
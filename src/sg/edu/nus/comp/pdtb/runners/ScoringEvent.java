@@ -0,0 +1,58 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one call of a scoring stage, such as parsing a gold file or scoring a
+ * prediction file against it. Recorded with <code>-XX:StartFlightRecording</code>.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+@Name("sg.edu.nus.comp.pdtb.Scoring")
+@Label("Scoring Stage")
+@Category("JnleResults")
+@Description("One call of a scoring stage, with the bytes and lines it read")
+@StackTrace(false)
+final class ScoringEvent extends Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("File")
+  String file;
+
+  @Label("Bytes Read")
+  @DataAmount
+  long bytes;
+
+  @Label("Lines")
+  long lines;
+
+  @Label("Allocated")
+  @DataAmount
+  long allocated;
+}
@@ -0,0 +1,301 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import sg.edu.nus.comp.pdtb.runners.Main.Score;
+
+/**
+ * Local HTTP server that keeps the gold standard loaded and scores pipeline runs on request, so a
+ * run is scored without starting a JVM and parsing the gold standard each time. Requests are
+ * handled concurrently, the rows of each one scored concurrently as well, and answered with every
+ * number of Tables 2 to 9 as JSON. Concurrent requests for one folder share its intermediate
+ * results, and its own gold files stay parsed between requests as long as they are unchanged.
+ * 
+ * <ul>
+ * <li><code>GET /score?dir=PATH</code> scores the results folder at <code>PATH</code> on the
+ * server's machine.</li>
+ * <li><code>POST /score</code> with a zip of a results folder as the body scores the folder it
+ * holds, either at the root of the zip or as its only top level folder.</li>
+ * </ul>
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ScoringServer implements HttpHandler {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Scores the rows of a request concurrently, shared by every request.
+   */
+  private final ExecutorService scoring;
+
+  private ScoringServer(ExecutorService scoring) {
+    this.scoring = scoring;
+  }
+
+  /**
+   * Loads the gold standard of <code>goldDir</code> and serves on <code>port</code> of the loopback
+   * interface until the JVM is stopped.
+   * 
+   * @param threads requests scored at once, all available processors when 0
+   * @throws IOException
+   */
+  static void start(String goldDir, int port, int threads) throws IOException {
+    long start = System.nanoTime();
+    // scoring the bundled run once loads every gold file the scores share
+    for (Score score : Score.values()) {
+      score.metrics(goldDir);
+    }
+    Main.forget(goldDir);
+    long loaded = System.nanoTime();
+
+    HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    server.createContext("/score", new ScoringServer(Executors.newFixedThreadPool(n)));
+    server.setExecutor(Executors.newFixedThreadPool(n));
+    server.start();
+    System.out.println(String.format("Gold standard of %s loaded in %.1f ms.", goldDir,
+        (loaded - start) / 1e6));
+    System.out.println("Scoring runs at http://localhost:" + server.getAddress().getPort()
+        + "/score");
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    File upload = null;
+    try {
+      String dir;
+      if ("GET".equals(exchange.getRequestMethod())) {
+        dir = parameter(exchange.getRequestURI().getRawQuery(), "dir");
+        if (dir == null) {
+          respond(exchange, 400, error("Missing dir parameter"));
+          return;
+        }
+      } else if ("POST".equals(exchange.getRequestMethod())) {
+        upload = Files.createTempDirectory("jnle-run").toFile();
+        dir = unzip(exchange.getRequestBody(), upload).getPath();
+      } else {
+        exchange.getResponseHeaders().set("Allow", "GET, POST");
+        respond(exchange, 405, error("Method not allowed"));
+        return;
+      }
+      dir = dir.endsWith("/") ? dir : dir + "/";
+      if (!new File(dir).isDirectory()) {
+        respond(exchange, 404, error("Results folder " + dir + " not found"));
+        return;
+      }
+      Main.acquire(dir);
+      try {
+        respond(exchange, 200, score(upload == null ? dir : "upload", dir));
+      } finally {
+        Main.release(dir);
+        if (upload != null) {
+          Main.forget(dir);
+        }
+      }
+    } catch (IOException e) {
+      respond(exchange, 500, error(e.toString()));
+    } catch (RuntimeException e) {
+      respond(exchange, 500, error(e.toString()));
+    } finally {
+      exchange.close();
+      if (upload != null) {
+        delete(upload.toPath());
+      }
+    }
+  }
+
+  /**
+   * Every score of the run in <code>dir</code> as a JSON object.
+   */
+  private String score(String name, final String dir) throws IOException {
+    long start = System.nanoTime();
+    List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+    for (final Score score : Score.values()) {
+      results.add(scoring.submit(new Callable<double[]>() {
+        @Override
+        public double[] call() throws IOException {
+          return score.metrics(dir);
+        }
+      }));
+    }
+    StringBuilder scores = new StringBuilder();
+    for (Score score : Score.values()) {
+      double[] metrics = SharedResults.await(results.get(score.ordinal()), score);
+      String[] names = score.metricNames();
+      scores.append(scores.length() == 0 ? "\n    {" : ",\n    {");
+      scores.append("\"score\": ").append(quote(score.name()));
+      scores.append(", \"label\": ").append(quote(score.label));
+      int interval = names.length;
+      for (int i = 0; i < names.length; ++i) {
+        scores.append(", ").append(quote(names[i])).append(": ").append(number(metrics[i]));
+        if (names[i].toLowerCase().endsWith("f1") && interval + 1 < metrics.length) {
+          scores.append(", ").append(quote(names[i] + "Interval")).append(": [");
+          scores.append(number(metrics[interval])).append(", ");
+          scores.append(number(metrics[interval + 1])).append("]");
+          interval += 2;
+        }
+      }
+      scores.append("}");
+    }
+    return "{\n  \"dir\": " + quote(name) + ",\n  \"millis\": "
+        + number((System.nanoTime() - start) / 1e6) + ",\n  \"scores\": [" + scores + "\n  ]\n}\n";
+  }
+
+  private static String error(String message) {
+    return "{\"error\": " + quote(message) + "}\n";
+  }
+
+  private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    OutputStream out = exchange.getResponseBody();
+    try {
+      out.write(body);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * The decoded value of <code>name</code> in a raw query string, or null when absent.
+   */
+  private static String parameter(String query, String name) throws UnsupportedEncodingException {
+    if (query == null) {
+      return null;
+    }
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), "UTF-8").equals(name)) {
+        return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Extracts a zipped results folder into <code>dir</code>.
+   * 
+   * @return the results folder, <code>dir</code> or its only top level folder
+   * @throws IOException if the body is not a zip or an entry falls outside <code>dir</code>
+   */
+  private static File unzip(InputStream body, File dir) throws IOException {
+    String root = dir.getCanonicalPath() + File.separator;
+    ZipInputStream zip = new ZipInputStream(body);
+    try {
+      byte[] buffer = new byte[1 << 16];
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        File file = new File(dir, entry.getName());
+        if (!file.getCanonicalPath().startsWith(root)) {
+          throw new IOException("Zip entry outside the results folder: " + entry.getName());
+        }
+        if (entry.isDirectory()) {
+          file.mkdirs();
+          continue;
+        }
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+          int n;
+          while ((n = zip.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+          }
+        } finally {
+          out.close();
+        }
+      }
+    } finally {
+      zip.close();
+    }
+    File[] files = dir.listFiles();
+    if (files == null || files.length == 0) {
+      throw new IOException("Empty or invalid zip of a results folder");
+    }
+    return files.length == 1 && files[0].isDirectory() ? files[0] : dir;
+  }
+
+  private static void delete(Path dir) throws IOException {
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * A JSON number, or null for the NaN of an undefined F1.
+   */
+  private static String number(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+  }
+
+  private static String quote(String s) {
+    StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < ' ') {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
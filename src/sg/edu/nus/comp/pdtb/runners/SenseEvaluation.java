@@ -0,0 +1,278 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import sg.edu.nus.comp.pdtb.util.LabelTable;
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * Per-sense evaluation of a classifier output whose lines list the whole distribution, such as
+ * <code>Conjunction[0.0305]  Cause[0.0006]  ...  Contrast</code>, before the predicted sense.
+ * 
+ * Each distribution is parsed once into a <code>double[]</code> indexed by interned sense id, which
+ * feeds the confusion matrix, per-sense precision, recall and F1, log-loss, top-k accuracy and
+ * calibration bins in a single pass over the files.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class SenseEvaluation {
+
+  static final int TOP_K = 3;
+  static final int BINS = 10;
+  /**
+   * Floor of the gold sense probability in the log-loss, so a 0 does not make it infinite.
+   */
+  private static final double MIN_PROBABILITY = 1e-15;
+
+  private final LabelTable senses = new LabelTable();
+  /**
+   * Side of the square confusion matrix, at least the number of senses.
+   */
+  private int dim = 16;
+  /**
+   * Instances per gold sense row and predicted sense column, at <code>gold * dim + predicted</code>.
+   * An instance predicted as any of its gold senses is counted on the diagonal.
+   */
+  private int[] confusion = new int[dim * dim];
+  /**
+   * The distribution of the current line, indexed by sense id.
+   */
+  private double[] probabilities = new double[dim];
+
+  private int instances;
+  private int skipped;
+  private int correct;
+  private double logLoss;
+  private final int[] topK = new int[TOP_K];
+  private final int[] binInstances = new int[BINS];
+  private final int[] binCorrect = new int[BINS];
+  private final double[] binConfidence = new double[BINS];
+
+  static SenseEvaluation evaluate(File goldFile, File prdFile, GoldFormat format)
+      throws IOException {
+    return evaluate(GoldLabels.parse(goldFile, format), prdFile);
+  }
+
+  /**
+   * Evaluates a prediction file against parsed gold labels. Lines that are not gold instances are
+   * skipped.
+   */
+  static SenseEvaluation evaluate(GoldLabels gold, File prdFile) throws IOException {
+    SenseEvaluation evaluation = new SenseEvaluation();
+    // sense id of each gold label id, interned on first use so senses are listed as they appear
+    int[] ids = new int[gold.labels.size()];
+    Arrays.fill(ids, -1);
+    StageMetrics.Probe probe = StageMetrics.start("evaluateSenses", prdFile);
+    long lines = 0;
+    MappedLineReader prdReader = gold.openAligned(prdFile);
+    try {
+      TokenCursor token = new TokenCursor();
+      TokenCursor part = new TokenCursor();
+      for (int i = 0; i < gold.size; ++i) {
+        CharSequence prd = gold.nextAligned(prdReader, prdFile, i);
+        ++lines;
+        if (!gold.isGold(i) || gold.first[i] < 0) {
+          ++evaluation.skipped;
+        } else {
+          int first = evaluation.intern(gold, ids, gold.first[i]);
+          int second = gold.second(i) < 0 ? -1 : evaluation.intern(gold, ids, gold.second(i));
+          try {
+            evaluation.add(first, second, prd, token, part);
+          } catch (IllegalArgumentException e) {
+            throw new IOException(prdFile + ":" + lines + ": " + e.getMessage());
+          }
+        }
+      }
+      gold.endAligned(prdReader, prdFile);
+    } finally {
+      prdReader.close();
+      probe.end(prdReader.size(), lines);
+    }
+    return evaluation;
+  }
+
+  /**
+   * Scores one prediction line against gold senses <code>first</code> and <code>second</code>, -1
+   * when absent.
+   * 
+   * @throws IllegalArgumentException if the line has no predicted sense or a malformed probability
+   */
+  private void add(int first, int second, CharSequence line, TokenCursor token, TokenCursor part) {
+    Arrays.fill(probabilities, 0, senses.size(), 0);
+    int predicted = -1;
+    for (token.first(line); !token.isEmpty(); token.next()) {
+      int open = TokenCursor.indexOf(line, "[", token.start(), token.end());
+      if (open < 0) {
+        predicted = intern(token);
+        continue;
+      }
+      int sense = intern(part.span(line, token.start(), open));
+      int close = line.charAt(token.end() - 1) == ']' ? token.end() - 1 : token.end();
+      probabilities[sense] = part.span(line, open + 1, close).parseDouble();
+    }
+    if (predicted < 0) {
+      throw new IllegalArgumentException("No predicted sense: " + line);
+    }
+
+    boolean isCorrect = predicted == first || predicted == second;
+    int row = isCorrect ? predicted : first;
+    ++confusion[row * dim + predicted];
+    ++instances;
+    if (isCorrect) {
+      ++correct;
+    }
+
+    double gold = probabilities[first];
+    if (second >= 0) {
+      gold = Math.max(gold, probabilities[second]);
+    }
+    logLoss -= Math.log(Math.max(gold, MIN_PROBABILITY));
+    int rank = 0;
+    for (int s = 0; s < senses.size(); ++s) {
+      if (probabilities[s] > gold) {
+        ++rank;
+      }
+    }
+    for (int k = rank; k < TOP_K; ++k) {
+      ++topK[k];
+    }
+
+    double confidence = probabilities[predicted];
+    int bin = Math.max(0, Math.min(BINS - 1, (int) (confidence * BINS)));
+    ++binInstances[bin];
+    binConfidence[bin] += confidence;
+    if (isCorrect) {
+      ++binCorrect[bin];
+    }
+  }
+
+  /**
+   * Interns gold label <code>label</code>, memoized in <code>ids</code>.
+   */
+  private int intern(GoldLabels gold, int[] ids, int label) {
+    if (ids[label] < 0) {
+      ids[label] = grow(senses.intern(gold.labels.label(label)));
+    }
+    return ids[label];
+  }
+
+  /**
+   * Interns the sense under the cursor, growing the per-sense arrays for a new sense.
+   */
+  private int intern(TokenCursor sense) {
+    return grow(senses.intern(sense));
+  }
+
+  private int grow(int id) {
+    if (id >= dim) {
+      int grown = 2 * dim;
+      int[] matrix = new int[grown * grown];
+      for (int row = 0; row < dim; ++row) {
+        System.arraycopy(confusion, row * dim, matrix, row * grown, dim);
+      }
+      confusion = matrix;
+      probabilities = Arrays.copyOf(probabilities, grown);
+      dim = grown;
+    }
+    return id;
+  }
+
+  /**
+   * Prints the evaluation, headed by <code>title</code>.
+   */
+  void print(String title) {
+    System.out.println(title);
+    System.out.println("___________________________________");
+    System.out.println(instances + " instances"
+        + (skipped > 0 ? ", " + skipped + " without a gold sense skipped" : ""));
+    System.out.println(String.format("Accuracy   %.2f", percent(correct, instances)));
+    System.out.println(String.format("Log-loss   %.4f", instances == 0 ? 0 : logLoss / instances));
+    for (int k = 0; k < TOP_K; ++k) {
+      System.out.println(String.format("Top-%d      %.2f", k + 1, percent(topK[k], instances)));
+    }
+    System.out.println();
+
+    int n = senses.size();
+    // the senses are interned from the byte view of the lines
+    String[] names = new String[n];
+    int width = 5;
+    for (int s = 0; s < n; ++s) {
+      names[s] = MappedLineReader.fromByteView(senses.label(s));
+      width = Math.max(width, names[s].length());
+    }
+    System.out.println(String.format("%-" + width + "s %7s %7s %7s %7s %7s", "Sense", "Gold",
+        "Pred", "Prec", "Recall", "F1"));
+    for (int s = 0; s < n; ++s) {
+      int gold = 0;
+      int predicted = 0;
+      for (int t = 0; t < n; ++t) {
+        gold += confusion[s * dim + t];
+        predicted += confusion[t * dim + s];
+      }
+      int tp = confusion[s * dim + s];
+      double p = percent(tp, predicted);
+      double r = percent(tp, gold);
+      double f1 = p + r == 0 ? 0 : 2 * p * r / (p + r);
+      System.out.println(String.format("%-" + width + "s %7d %7d %7.2f %7.2f %7.2f",
+          names[s], gold, predicted, p, r, f1));
+    }
+    System.out.println();
+
+    System.out.println("Calibration of the predicted sense probability");
+    System.out.println(String.format("%-11s %9s %10s %8s", "Bin", "Instances", "Confidence",
+        "Accuracy"));
+    double ece = 0;
+    for (int b = 0; b < BINS; ++b) {
+      if (binInstances[b] == 0) {
+        continue;
+      }
+      double confidence = binConfidence[b] / binInstances[b];
+      double accuracy = 1.0 * binCorrect[b] / binInstances[b];
+      ece += Math.abs(confidence - accuracy) * binInstances[b] / instances;
+      System.out.println(String.format("%.1f - %.1f  %9d %10.4f %8.4f", 1.0 * b / BINS, 1.0
+          * (b + 1) / BINS, binInstances[b], confidence, accuracy));
+    }
+    System.out.println(String.format("Expected calibration error  %.4f", ece));
+    System.out.println();
+
+    System.out.println("Confusion matrix, gold senses in rows, predicted in columns");
+    StringBuilder header = new StringBuilder(String.format("%-" + (width + 4) + "s", ""));
+    for (int t = 0; t < n; ++t) {
+      header.append(String.format("%5d", t));
+    }
+    System.out.println(header);
+    for (int s = 0; s < n; ++s) {
+      StringBuilder row =
+          new StringBuilder(String.format("%2d  %-" + width + "s", s, names[s]));
+      for (int t = 0; t < n; ++t) {
+        row.append(String.format("%5d", confusion[s * dim + t]));
+      }
+      System.out.println(row);
+    }
+  }
+
+  private static double percent(int part, int whole) {
+    return whole == 0 ? 0 : part * 100.0 / whole;
+  }
+}
@@ -0,0 +1,77 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Intermediate results needed by more than one score, such as the connective counts every
+ * explicit table row is normalised by. Each one is computed once by the first score asking for it,
+ * while concurrent scores asking for the same key wait for that result.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class SharedResults {
+
+  private final ConcurrentHashMap<String, FutureTask<Object>> results =
+      new ConcurrentHashMap<String, FutureTask<Object>>();
+
+  /**
+   * @return the result stored under <code>key</code>, computing it first if needed
+   * @throws IOException if the computation failed
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(String key, Callable<T> compute) throws IOException {
+    FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) compute);
+    FutureTask<Object> existing = results.putIfAbsent(key, task);
+    if (existing != null) {
+      task = existing;
+    }
+    task.run();
+    return (T) await(task, key);
+  }
+
+  /**
+   * Waits for a result, rethrowing the I/O failure that produced it.
+   */
+  static <T> T await(Future<T> result, Object name) throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scoring " + name, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException("Failed scoring " + name, e.getCause());
+    }
+  }
+}
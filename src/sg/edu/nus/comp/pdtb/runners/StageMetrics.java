@@ -0,0 +1,183 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Bytes read, lines processed, wall time and allocation of each scoring stage. Every call of a
+ * stage is a {@link ScoringEvent} for the Flight Recorder and, with <code>--metrics</code>, is
+ * added to the totals of its stage, printed as a table at the end of the run.
+ * 
+ * Allocation is counted on the thread that calls the stage only. Bytes allocated by the reader and
+ * worker threads of a {@link sg.edu.nus.comp.pdtb.util.LinePipeline} or by the inflater threads of
+ * compressed input are not attributed to any stage.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class StageMetrics {
+
+  /**
+   * Whether stage totals are kept, set with <code>--metrics</code>.
+   */
+  static boolean enabled = false;
+
+  private static final ThreadMXBean THREADS = threads();
+
+  private static final ConcurrentHashMap<String, Stage> STAGES =
+      new ConcurrentHashMap<String, Stage>();
+
+  private StageMetrics() {}
+
+  /**
+   * Starts measuring one call of <code>stage</code> on the current thread.
+   */
+  static Probe start(String stage, Object file) {
+    return new Probe(stage, file);
+  }
+
+  /**
+   * One call of a stage, ended by {@link #end(long, long)} on the thread that started it.
+   */
+  static final class Probe {
+
+    private final String stage;
+    private final Object file;
+    private final ScoringEvent event = new ScoringEvent();
+    private final boolean measure;
+    private final long start;
+    private final long allocated;
+
+    private Probe(String stage, Object file) {
+      this.stage = stage;
+      this.file = file;
+      this.measure = enabled || event.isEnabled();
+      this.allocated = measure ? allocated() : 0;
+      event.begin();
+      this.start = System.nanoTime();
+    }
+
+    void end(long bytes, long lines) {
+      long nanos = System.nanoTime() - start;
+      event.end();
+      if (!measure) {
+        return;
+      }
+      long allocated = allocated() - this.allocated;
+      if (event.shouldCommit()) {
+        event.stage = stage;
+        event.file = String.valueOf(file);
+        event.bytes = bytes;
+        event.lines = lines;
+        event.allocated = allocated;
+        event.commit();
+      }
+      if (enabled) {
+        stage(stage).add(bytes, lines, nanos, allocated);
+      }
+    }
+  }
+
+  private static final class Stage {
+
+    final String name;
+    final AtomicLong calls = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong lines = new AtomicLong();
+    final AtomicLong nanos = new AtomicLong();
+    final AtomicLong allocated = new AtomicLong();
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    void add(long bytes, long lines, long nanos, long allocated) {
+      this.calls.incrementAndGet();
+      this.bytes.addAndGet(bytes);
+      this.lines.addAndGet(lines);
+      this.nanos.addAndGet(nanos);
+      this.allocated.addAndGet(Math.max(0, allocated));
+    }
+  }
+
+  private static Stage stage(String name) {
+    Stage stage = STAGES.get(name);
+    if (stage == null) {
+      Stage created = new Stage(name);
+      stage = STAGES.putIfAbsent(name, created);
+      if (stage == null) {
+        stage = created;
+      }
+    }
+    return stage;
+  }
+
+  /**
+   * Prints the totals of every stage, the slowest first. Times are summed over calls, so stages
+   * running concurrently can add up to more than the run took.
+   */
+  static void print(PrintStream out) {
+    List<Stage> stages = new ArrayList<Stage>(STAGES.values());
+    Collections.sort(stages, new Comparator<Stage>() {
+      @Override
+      public int compare(Stage a, Stage b) {
+        return Long.compare(b.nanos.get(), a.nanos.get());
+      }
+    });
+    out.println("Scoring stages");
+    out.println("___________________________________");
+    out.println(String.format("%-20s%8s%10s%10s%10s%14s%12s", "Stage", "Calls", "Lines", "MB",
+        "Time ms", "Lines/s", "Alloc MB"));
+    for (Stage stage : stages) {
+      double seconds = stage.nanos.get() / 1e9;
+      out.println(String.format("%-20s%8d%10d%10.2f%10.2f%14.0f%12.2f", stage.name, stage.calls
+          .get(), stage.lines.get(), stage.bytes.get() / 1e6, seconds * 1e3, seconds == 0 ? 0
+          : stage.lines.get() / seconds, stage.allocated.get() / 1e6));
+    }
+    if (THREADS == null) {
+      out.println("Allocation is not measured by this JVM.");
+    } else {
+      out.println("Allocation is counted on the calling thread only, not on pipeline threads.");
+    }
+    out.println();
+  }
+
+  private static long allocated() {
+    return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static ThreadMXBean threads() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof ThreadMXBean
+        && ((ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+      ((ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+      return (ThreadMXBean) threads;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,210 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import sg.edu.nus.comp.pdtb.util.LabelTable;
+import sg.edu.nus.comp.pdtb.util.SpanIndex;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * Scores predictions as they are streamed, one per line, tagged with the component that made them:
+ * 
+ * <pre>
+ * conn      0[0.0857]  1[0.9143]  1
+ * argpos    PS[0.0012]  SS[0.9988]  SS
+ * exp       Contrast[0.9011]  ...  Contrast
+ * implicit  Cause[0.3120]  ...  Cause
+ * argext    wsj_2300  43..48|39..42;195..239|49..191
+ * </pre>
+ * 
+ * The first four are the lines of <code>conn.hw.out</code>, <code>argpos.hw.out</code>,
+ * <code>exp.hw.out</code> and <code>implicit.out</code>, aligned in order with the lines of their GS
+ * gold files. An <code>argext</code> line is a line of the pipe file of the named document, whose
+ * gold relations count from its first prediction on.
+ * 
+ * Only running counts are kept, so memory does not grow with the stream. Lines with an unknown
+ * tag, that cannot be parsed or that go past the end of their gold file are counted as skipped.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class StreamScorer {
+
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  private static final int CONN = 0;
+  private static final String[] TAGS = {"conn", "argpos", "exp", "implicit"};
+  private static final String ARG_EXT = "argext";
+
+  private final GoldLabels[] gold;
+  private final int[] connClasses;
+  private final ArgExtGold argExtGold;
+  /**
+   * Argument extractor document names without the <code>.pipe</code> extension, with the ids of
+   * {@link ArgExtGold#docs}.
+   */
+  private final LabelTable docs = new LabelTable();
+  private final boolean[] seen;
+
+  /**
+   * Lines scored so far per tag, the gold line the next one is aligned with.
+   */
+  private final int[] lines = new int[TAGS.length];
+  private final Counts[] counts = new Counts[TAGS.length];
+  private final ArgExtCounts argExt = new ArgExtCounts();
+  private long instances;
+  private long skipped;
+
+  private final TokenCursor tag = new TokenCursor();
+  private final TokenCursor token = new TokenCursor();
+  private final SpanIndex.Relation rel = new SpanIndex.Relation(3);
+
+  StreamScorer(GoldLabels conn, GoldLabels argPos, GoldLabels exp, GoldLabels nonExp,
+      ArgExtGold argExtGold) {
+    this.gold = new GoldLabels[] {conn, argPos, exp, nonExp};
+    this.connClasses = Main.connClasses(conn);
+    this.argExtGold = argExtGold;
+    for (String name : argExtGold.names) {
+      docs.intern(name.endsWith(".pipe") ? name.substring(0, name.length() - ".pipe".length())
+          : name);
+    }
+    this.seen = new boolean[argExtGold.docs.length];
+    for (int c = 0; c < counts.length; ++c) {
+      counts[c] = new Counts();
+    }
+  }
+
+  /**
+   * Scores the stream until its end, printing the running metrics every <code>every</code>
+   * instances and once more at the end.
+   * 
+   * @throws IOException
+   */
+  void score(InputStream in, int every, PrintStream out) throws IOException {
+    // one char per byte, the same view of the text as the gold labels
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, ISO_8859_1), 1 << 16);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (accept(line) && every > 0 && instances % every == 0) {
+        print(out);
+      }
+    }
+    print(out);
+  }
+
+  /**
+   * Scores one tagged prediction line.
+   * 
+   * @return whether the line was scored
+   */
+  boolean accept(CharSequence line) {
+    tag.first(line);
+    try {
+      for (int c = 0; c < TAGS.length; ++c) {
+        if (tag.contentEquals(TAGS[c])) {
+          return acceptLine(c, line);
+        }
+      }
+      if (tag.contentEquals(ARG_EXT)) {
+        return acceptRelation(line);
+      }
+    } catch (IllegalArgumentException e) {
+      // a malformed prediction, such as a connective class that is not a number
+    }
+    ++skipped;
+    return false;
+  }
+
+  private boolean acceptLine(int component, CharSequence line) {
+    GoldLabels labels = gold[component];
+    int i = lines[component];
+    token.last(line);
+    if (i == labels.size || token.start() == tag.start()) {
+      ++skipped;
+      return false;
+    }
+    if (component == CONN) {
+      boolean expected = connClasses[labels.first[i]] == 1;
+      boolean predicted = token.parseInt() == 1;
+      counts[component].add(expected, predicted, expected && predicted);
+    } else {
+      counts[component].add(labels.isGold(i), true, labels.matches(i, labels.labels.get(token)));
+    }
+    ++lines[component];
+    ++instances;
+    return true;
+  }
+
+  private boolean acceptRelation(CharSequence line) {
+    token.first(line, tag.end(), line.length()).next();
+    int doc = docs.get(token);
+    if (doc < 0) {
+      ++skipped;
+      return false;
+    }
+    int from = token.end();
+    while (from < line.length() && TokenCursor.isWhitespace(line.charAt(from))) {
+      ++from;
+    }
+    SpanIndex relations = argExtGold.docs[doc];
+    int id = relations.get(rel.parse(line.subSequence(from, line.length())));
+    if (!seen[doc]) {
+      seen[doc] = true;
+      for (int g = 0; g < relations.size(); ++g) {
+        argExt.add(true, false, 0);
+      }
+    }
+    argExt.add(false, true, Main.argExtMatch(relations, id, rel));
+    ++instances;
+    return true;
+  }
+
+  /**
+   * Prints the precision, recall and F1 of every component streamed so far.
+   */
+  void print(PrintStream out) {
+    out.println(instances + " instances" + (skipped > 0 ? ", " + skipped + " skipped" : ""));
+    out.println(String.format("%-18s%10s%10s%10s%10s", "", "Instances", "Prec", "Recall", "F1"));
+    for (int c = 0; c < TAGS.length; ++c) {
+      if (lines[c] > 0) {
+        print(out, TAGS[c], lines[c], counts[c]);
+      }
+    }
+    if (argExt.arg1.predicted > 0) {
+      print(out, "argext Arg1", argExt.arg1.predicted, argExt.arg1);
+      print(out, "argext Arg2", argExt.arg2.predicted, argExt.arg2);
+      print(out, "argext Arg1&Arg2", argExt.both.predicted, argExt.both);
+    }
+    out.println();
+    out.flush();
+  }
+
+  private static void print(PrintStream out, String name, int instances, Counts counts) {
+    double p = counts.predicted == 0 ? 0 : 100.0 * counts.correct / counts.predicted;
+    double r = counts.gold == 0 ? 0 : 100.0 * counts.correct / counts.gold;
+    out.println(String.format("%-18s%10d%10.2f%10.2f%10.2f", name, instances, p, r, Counts.f1(
+        counts.gold, counts.predicted, counts.correct)));
+  }
+}
@@ -0,0 +1,218 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+import sg.edu.nus.comp.pdtb.util.TokenCursor;
+
+/**
+ * Threshold sweep of a binary classifier output such as <code>conn.hw.out</code>, whose lines
+ * read <code>0[0.0857]  1[0.9143]  1</code>. The positive class score of each candidate is kept in
+ * a primitive <code>double[]</code>, one for gold positives and one for gold negatives. Each is
+ * sorted once, and a single merge of the two, from the highest score down, visits every distinct
+ * threshold. The precision-recall curve, the best F1 threshold and the areas under the ROC and PR
+ * curves take O(n log n) for n candidates.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+final class ThresholdSweep {
+
+  private static final String POSITIVE = "1";
+
+  /**
+   * Sorted positive class scores of the gold positive and gold negative candidates.
+   */
+  private final double[] positives;
+  private final double[] negatives;
+
+  private double bestThreshold;
+  private double bestF1;
+  private double bestPrecision;
+  private double bestRecall;
+  private double rocAuc;
+  private double averagePrecision;
+
+  private ThresholdSweep(double[] positives, double[] negatives) {
+    this.positives = positives;
+    this.negatives = negatives;
+  }
+
+  /**
+   * Reads the positive class scores of <code>prdFile</code> labelled by the <code>gold</code>
+   * labels of <code>conn.test</code>, and sweeps them. When <code>curve</code> is not null the full
+   * precision-recall curve is written to it, one distinct threshold per line.
+   */
+  static ThresholdSweep sweep(GoldLabels gold, File prdFile, File curve) throws IOException {
+    int[] classes = Main.connClasses(gold);
+    double[] positives = new double[1024];
+    double[] negatives = new double[1024];
+    int p = 0, n = 0;
+    StageMetrics.Probe probe = StageMetrics.start("sweepThresholds", prdFile);
+    MappedLineReader prdReader = null;
+    try {
+      prdReader = gold.openAligned(prdFile);
+      TokenCursor token = new TokenCursor();
+      TokenCursor part = new TokenCursor();
+      for (int line = 0; line < gold.size; ++line) {
+        double score = score(gold.nextAligned(prdReader, prdFile, line), token, part);
+        if (classes[gold.first[line]] == 1) {
+          if (p == positives.length) {
+            positives = Arrays.copyOf(positives, 2 * p);
+          }
+          positives[p++] = score;
+        } else {
+          if (n == negatives.length) {
+            negatives = Arrays.copyOf(negatives, 2 * n);
+          }
+          negatives[n++] = score;
+        }
+      }
+      gold.endAligned(prdReader, prdFile);
+    } finally {
+      if (prdReader != null) {
+        prdReader.close();
+      }
+      probe.end(prdReader == null ? 0 : prdReader.size(), p + n);
+    }
+    positives = Arrays.copyOf(positives, p);
+    negatives = Arrays.copyOf(negatives, n);
+    Arrays.sort(positives);
+    Arrays.sort(negatives);
+
+    ThresholdSweep sweep = new ThresholdSweep(positives, negatives);
+    Writer out = null;
+    try {
+      if (curve != null) {
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(curve), "UTF-8"));
+        out.write("threshold\tprecision\trecall\tf1\n");
+      }
+      sweep.run(out);
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+    return sweep;
+  }
+
+  /**
+   * The probability of the positive class in a line of <code>Label[prob]</code> tokens.
+   */
+  private static double score(CharSequence line, TokenCursor token, TokenCursor part) {
+    for (token.first(line); !token.isEmpty(); token.next()) {
+      int open = TokenCursor.indexOf(line, "[", token.start(), token.end());
+      if (open >= 0 && part.span(line, token.start(), open).contentEquals(POSITIVE)) {
+        int close = line.charAt(token.end() - 1) == ']' ? token.end() - 1 : token.end();
+        return part.span(line, open + 1, close).parseDouble();
+      }
+    }
+    throw new IllegalArgumentException("No score of class " + POSITIVE + " in line: " + line);
+  }
+
+  /**
+   * Lowers the threshold through every distinct score, predicting positive every candidate scored
+   * at or above it.
+   */
+  private void run(Writer curve) throws IOException {
+    int total = positives.length;
+    int i = positives.length - 1;
+    int j = negatives.length - 1;
+    int tp = 0, fp = 0;
+    double previousRecall = 0;
+    double previousFpr = 0;
+    while (i >= 0 || j >= 0) {
+      double threshold =
+          i < 0 ? negatives[j] : j < 0 ? positives[i] : Math.max(positives[i], negatives[j]);
+      while (i >= 0 && positives[i] == threshold) {
+        ++tp;
+        --i;
+      }
+      while (j >= 0 && negatives[j] == threshold) {
+        ++fp;
+        --j;
+      }
+      double precision = 1.0 * tp / (tp + fp);
+      double recall = total == 0 ? 0 : 1.0 * tp / total;
+      double fpr = negatives.length == 0 ? 0 : 1.0 * fp / negatives.length;
+      double f1 = total + tp + fp == 0 ? 0 : 2.0 * tp / (total + tp + fp);
+      averagePrecision += (recall - previousRecall) * precision;
+      rocAuc += (fpr - previousFpr) * (recall + previousRecall) / 2;
+      if (f1 > bestF1) {
+        bestF1 = f1;
+        bestThreshold = threshold;
+        bestPrecision = precision;
+        bestRecall = recall;
+      }
+      if (curve != null) {
+        curve.write(threshold + "\t" + precision + "\t" + recall + "\t" + f1 + "\n");
+      }
+      previousRecall = recall;
+      previousFpr = fpr;
+    }
+  }
+
+  /**
+   * Candidates scored at or above <code>threshold</code> in a sorted array.
+   */
+  private static int atOrAbove(double[] sorted, double threshold) {
+    int low = 0, high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < threshold) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return sorted.length - low;
+  }
+
+  /**
+   * Prints the summary and the curve at thresholds 0.05 to 0.95, headed by <code>title</code>.
+   */
+  void print(String title) {
+    System.out.println(title);
+    System.out.println("___________________________________");
+    System.out.println(positives.length + " gold connectives in " + (positives.length
+        + negatives.length) + " candidates");
+    System.out.println(String.format("ROC AUC             %.4f", rocAuc));
+    System.out.println(String.format("Average precision   %.4f", averagePrecision));
+    System.out.println(String.format("Best F1             %.2f at threshold %.4f, P %.2f R %.2f",
+        100 * bestF1, bestThreshold, 100 * bestPrecision, 100 * bestRecall));
+    System.out.println();
+    System.out.println("Threshold   Prec   Recall      F1");
+    for (int t = 1; t < 20; ++t) {
+      double threshold = t / 20.0;
+      int tp = atOrAbove(positives, threshold);
+      int fp = atOrAbove(negatives, threshold);
+      double p = tp + fp == 0 ? 0 : 100.0 * tp / (tp + fp);
+      double r = positives.length == 0 ? 0 : 100.0 * tp / positives.length;
+      double f1 = p + r == 0 ? 0 : 2 * p * r / (p + r);
+      System.out.println(String.format("%9.2f %6.2f %8.2f %7.2f", threshold, p, r, f1));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Big-endian primitive columns and strings in binary files, written through a
+ * <code>DataOutput</code> and read back from a, typically memory-mapped, <code>ByteBuffer</code>.
+ * Int and long columns are read with a single bulk copy.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class BinaryColumns {
+
+  private BinaryColumns() {}
+
+  /**
+   * Writes the length followed by the first <code>length</code> ints of <code>values</code>.
+   */
+  public static void writeInts(DataOutput out, int[] values, int length) throws IOException {
+    out.writeInt(length);
+    for (int i = 0; i < length; ++i) {
+      out.writeInt(values[i]);
+    }
+  }
+
+  /**
+   * Reads a column written by {@link #writeInts(DataOutput, int[], int)} into an array of at least
+   * <code>capacity</code> ints.
+   */
+  public static int[] readInts(ByteBuffer in, int capacity) {
+    int length = in.getInt();
+    int[] values = new int[Math.max(length, capacity)];
+    in.asIntBuffer().get(values, 0, length);
+    in.position(in.position() + 4 * length);
+    return values;
+  }
+
+  /**
+   * Writes the length followed by the first <code>length</code> bytes of <code>values</code>.
+   */
+  public static void writeBytes(DataOutput out, byte[] values, int length) throws IOException {
+    out.writeInt(length);
+    out.write(values, 0, length);
+  }
+
+  /**
+   * Reads a column written by {@link #writeBytes(DataOutput, byte[], int)}.
+   */
+  public static byte[] readBytes(ByteBuffer in) {
+    byte[] values = new byte[in.getInt()];
+    in.get(values);
+    return values;
+  }
+
+  /**
+   * Writes the length followed by the first <code>length</code> longs of <code>values</code>.
+   */
+  public static void writeLongs(DataOutput out, long[] values, int length) throws IOException {
+    out.writeInt(length);
+    for (int i = 0; i < length; ++i) {
+      out.writeLong(values[i]);
+    }
+  }
+
+  /**
+   * Reads a column written by {@link #writeLongs(DataOutput, long[], int)}.
+   */
+  public static long[] readLongs(ByteBuffer in) {
+    long[] values = new long[in.getInt()];
+    in.asLongBuffer().get(values);
+    in.position(in.position() + 8 * values.length);
+    return values;
+  }
+
+  /**
+   * Writes a string as its length in bytes followed by its UTF-8 bytes, so byte views of mapped
+   * lines and file names of any script both round trip.
+   */
+  public static void writeString(DataOutput out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,240 @@
+package sg.edu.nus.comp.pdtb.util;
+
+/**
+ *
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block gzip, the BGZF layout of samtools: a file is a series of gzip members of at most 64KB
+ * each, whose header carries the compressed size of the member in a <code>BC</code> extra field.
+ * Any gzip reader reads it as one stream, while the size lets the members be found without
+ * inflating them, so they can be inflated in parallel. Only the JDK is needed to read and write it.
+ * 
+ * Running the class compresses each file named on the command line to the same name with
+ * <code>.bgz</code> appended.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class BlockGzip {
+
+  /**
+   * The input of one block, chosen by BGZF so an incompressible block still fits in 64KB.
+   */
+  private static final int BLOCK_INPUT = 0xff00;
+  private static final int MAX_BLOCK = 1 << 16;
+  /**
+   * Header of a gzip member with a single <code>BC</code> extra field, without the block size.
+   */
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6,
+      0, 'B', 'C', 2, 0};
+  private static final int HEADER_LENGTH = HEADER.length + 2;
+  private static final int TRAILER_LENGTH = 8;
+
+  private BlockGzip() {}
+
+  /**
+   * Whether <code>header</code>, the first bytes of a file, start a block gzip member.
+   */
+  public static boolean isBlockGzip(byte[] header, int length) {
+    if (length < HEADER.length || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+        || (header[3] & 4) == 0) {
+      return false;
+    }
+    int extra = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+    return extra >= 6 && header[12] == 'B' && header[13] == 'C' && header[14] == 2
+        && header[15] == 0;
+  }
+
+  /**
+   * Reads the next member of a block gzip stream.
+   * 
+   * @return the whole member, or null at the end of the stream
+   */
+  static byte[] readBlock(DataInputStream in) throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      return null;
+    }
+    byte[] header = new byte[12];
+    header[0] = (byte) first;
+    in.readFully(header, 1, header.length - 1);
+    if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || (header[3] & 4) == 0) {
+      throw new IOException("Not a block gzip member");
+    }
+    int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+    byte[] extra = new byte[extraLength];
+    in.readFully(extra);
+    int size = -1;
+    for (int i = 0; i + 4 <= extraLength;) {
+      int length = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+      if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extraLength) {
+        size = ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+      }
+      i += 4 + length;
+    }
+    if (size < header.length + extraLength + TRAILER_LENGTH) {
+      throw new IOException("Block gzip member without a valid block size");
+    }
+    byte[] block = new byte[size];
+    System.arraycopy(header, 0, block, 0, header.length);
+    System.arraycopy(extra, 0, block, header.length, extraLength);
+    in.readFully(block, header.length + extraLength, size - header.length - extraLength);
+    return block;
+  }
+
+  /**
+   * The length of the data of a member read by {@link #readBlock(DataInputStream)}.
+   */
+  static int inflatedLength(byte[] block) {
+    return readIntLE(block, block.length - 4);
+  }
+
+  /**
+   * Inflates <code>blocks</code> one after another into a single buffer.
+   */
+  static ByteBuffer inflate(List<byte[]> blocks) throws IOException {
+    int length = 0;
+    for (byte[] block : blocks) {
+      length += inflatedLength(block);
+    }
+    byte[] out = new byte[length];
+    int offset = 0;
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    try {
+      for (byte[] block : blocks) {
+        int extraLength = (block[10] & 0xff) | (block[11] & 0xff) << 8;
+        int start = 12 + extraLength;
+        int expected = inflatedLength(block);
+        inflater.reset();
+        inflater.setInput(block, start, block.length - start - TRAILER_LENGTH);
+        int n = 0;
+        while (n < expected && !inflater.finished()) {
+          int read = inflater.inflate(out, offset + n, expected - n);
+          if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          n += read;
+        }
+        crc.reset();
+        crc.update(out, offset, n);
+        if (n != expected || (int) crc.getValue() != readIntLE(block, block.length - 8)) {
+          throw new IOException("Corrupt block gzip member");
+        }
+        offset += n;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block gzip member", e);
+    } finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap(out);
+  }
+
+  /**
+   * Compresses <code>in</code> to <code>out</code> in blocks, ending with the empty member BGZF
+   * uses to mark the end of a file.
+   */
+  public static void compress(InputStream in, OutputStream out) throws IOException {
+    byte[] input = new byte[BLOCK_INPUT];
+    byte[] block = new byte[MAX_BLOCK];
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    CRC32 crc = new CRC32();
+    try {
+      while (true) {
+        int n = 0;
+        int read;
+        while (n < input.length && (read = in.read(input, n, input.length - n)) > 0) {
+          n += read;
+        }
+        deflater.reset();
+        deflater.setInput(input, 0, n);
+        deflater.finish();
+        int length = HEADER_LENGTH;
+        while (!deflater.finished()) {
+          if (length == block.length - TRAILER_LENGTH) {
+            throw new IOException("Block does not fit in " + MAX_BLOCK + " bytes");
+          }
+          length += deflater.deflate(block, length, block.length - TRAILER_LENGTH - length);
+        }
+        crc.reset();
+        crc.update(input, 0, n);
+        System.arraycopy(HEADER, 0, block, 0, HEADER.length);
+        writeShortLE(block, HEADER.length, length + TRAILER_LENGTH - 1);
+        writeIntLE(block, length, (int) crc.getValue());
+        writeIntLE(block, length + 4, n);
+        out.write(block, 0, length + TRAILER_LENGTH);
+        if (n == 0) {
+          return;
+        }
+      }
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static int readIntLE(byte[] b, int i) {
+    return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16
+        | (b[i + 3] & 0xff) << 24;
+  }
+
+  private static void writeShortLE(byte[] b, int i, int value) {
+    b[i] = (byte) value;
+    b[i + 1] = (byte) (value >>> 8);
+  }
+
+  private static void writeIntLE(byte[] b, int i, int value) {
+    writeShortLE(b, i, value);
+    writeShortLE(b, i + 2, value >>> 16);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: BlockGzip FILE...");
+      System.exit(64);
+    }
+    for (String name : args) {
+      InputStream in = new BufferedInputStream(new FileInputStream(name), 1 << 16);
+      try {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(name + ".bgz"), 1 << 16);
+        try {
+          compress(in, out);
+        } finally {
+          out.close();
+        }
+      } finally {
+        in.close();
+      }
+      System.out.println(name + " -> " + new File(name + ".bgz").getName());
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package sg.edu.nus.comp.pdtb.util;
+
+/**
+ *
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The inflated bytes of a gzip or {@link BlockGzip} file, handed out in chunks. Large files are
+ * inflated ahead of the reader on a thread of their own, at most a few chunks ahead, with the
+ * members of a block gzip file inflated on a pool of all cores, so reading does not wait on
+ * inflating. Small files are inflated whole when opened.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class CompressedInput {
+
+  /**
+   * Suffixes tried, in order, for a file that does not exist.
+   */
+  private static final String[] SUFFIXES = {".gz", ".bgz"};
+  private static final int CHUNK = 1 << 20;
+  private static final int QUEUED_CHUNKS = 4;
+  /**
+   * Block gzip members inflated by one task, about 1MB.
+   */
+  private static final int BLOCKS_PER_TASK = 16;
+  private static final int SMALL_FILE = 1 << 16;
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private static ExecutorService pool;
+
+  private final String name;
+  private final BlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<ByteBuffer>(
+      QUEUED_CHUNKS);
+  private Thread inflater;
+  private ByteBuffer whole;
+  private volatile Throwable failure;
+  private boolean ended;
+
+  private CompressedInput(String name) {
+    this.name = name;
+  }
+
+  /**
+   * The file itself if it exists, otherwise the first compressed version of it that does, so
+   * <code>conn.hw.out</code> may be stored as <code>conn.hw.out.gz</code>.
+   */
+  public static File resolve(File file) {
+    if (file.exists()) {
+      return file;
+    }
+    for (String suffix : SUFFIXES) {
+      File compressed = new File(file.getPath() + suffix);
+      if (compressed.exists()) {
+        return compressed;
+      }
+    }
+    return file;
+  }
+
+  /**
+   * The name of a file with its compression suffix, if any, removed.
+   */
+  public static String plainName(String name) {
+    for (String suffix : SUFFIXES) {
+      if (name.endsWith(suffix)) {
+        return name.substring(0, name.length() - suffix.length());
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Whether <code>file</code>, resolved as by {@link #resolve(File)}, starts like a gzip file and
+   * would be inflated when read.
+   */
+  public static boolean isCompressed(File file) throws IOException {
+    InputStream in = new FileInputStream(resolve(file));
+    try {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Starts inflating <code>file</code>, open on <code>channel</code>, if its first bytes are those
+   * of a gzip file.
+   * 
+   * @return the inflated input, or null if the file is not compressed
+   */
+  static CompressedInput open(File file, FileChannel channel) throws IOException {
+    byte[] header = new byte[16];
+    ByteBuffer magic = ByteBuffer.wrap(header);
+    while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+    }
+    if (magic.position() < 2 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+      return null;
+    }
+    CompressedInput input = new CompressedInput(file.getName());
+    long size = channel.size();
+    if (size <= SMALL_FILE) {
+      input.whole = inflateWhole(channel, (int) size);
+    } else {
+      input.start(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16),
+          BlockGzip.isBlockGzip(header, magic.position()));
+    }
+    return input;
+  }
+
+  /**
+   * The next chunk of inflated bytes, never empty.
+   * 
+   * @return the chunk, or null at the end of the file
+   */
+  ByteBuffer next() throws IOException {
+    if (inflater == null) {
+      ByteBuffer chunk = whole;
+      whole = null;
+      return chunk == null || !chunk.hasRemaining() ? null : chunk;
+    }
+    if (ended) {
+      return null;
+    }
+    ByteBuffer chunk;
+    try {
+      chunk = chunks.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while inflating " + name);
+    }
+    if (chunk == END) {
+      ended = true;
+      if (failure != null) {
+        throw new IOException("Cannot inflate " + name, failure);
+      }
+      return null;
+    }
+    return chunk;
+  }
+
+  /**
+   * Stops inflating. The file itself is closed by its owner.
+   */
+  void close() {
+    if (inflater != null) {
+      inflater.interrupt();
+    }
+  }
+
+  private void start(final InputStream in, final boolean blocks) {
+    inflater = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (blocks) {
+            inflateBlocks(new DataInputStream(in));
+          } else {
+            inflateStream(new GZIPInputStream(in, 1 << 16));
+          }
+        } catch (InterruptedException e) {
+          // the reader was closed
+          return;
+        } catch (Throwable e) {
+          failure = e;
+        }
+        try {
+          chunks.put(END);
+        } catch (InterruptedException e) {
+          // the reader was closed
+        }
+      }
+    }, "inflate " + name);
+    inflater.setDaemon(true);
+    inflater.start();
+  }
+
+  private void inflateStream(InputStream in) throws IOException, InterruptedException {
+    while (true) {
+      byte[] chunk = new byte[CHUNK];
+      int n = 0;
+      int read;
+      while (n < chunk.length && (read = in.read(chunk, n, chunk.length - n)) > 0) {
+        n += read;
+      }
+      if (n > 0) {
+        chunks.put(ByteBuffer.wrap(chunk, 0, n));
+      }
+      if (n < chunk.length) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the members in order and inflates them in groups on the pool, handing the groups on in
+   * order as they finish, with at most one group per core in flight.
+   */
+  private void inflateBlocks(DataInputStream in) throws IOException, InterruptedException {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    ArrayDeque<Future<ByteBuffer>> inflating = new ArrayDeque<Future<ByteBuffer>>();
+    try {
+      boolean more = true;
+      while (more) {
+        final List<byte[]> blocks = new ArrayList<byte[]>(BLOCKS_PER_TASK);
+        byte[] block = null;
+        while (blocks.size() < BLOCKS_PER_TASK && (block = BlockGzip.readBlock(in)) != null) {
+          blocks.add(block);
+        }
+        more = block != null;
+        if (!blocks.isEmpty()) {
+          inflating.add(pool().submit(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws IOException {
+              return BlockGzip.inflate(blocks);
+            }
+          }));
+        }
+        while (inflating.size() > parallelism || (!more && !inflating.isEmpty())) {
+          handOn(inflating.poll());
+        }
+      }
+    } finally {
+      for (Future<ByteBuffer> task : inflating) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private void handOn(Future<ByteBuffer> task) throws IOException, InterruptedException {
+    ByteBuffer chunk;
+    try {
+      chunk = task.get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e
+          .getCause());
+    }
+    if (chunk.hasRemaining()) {
+      chunks.put(chunk);
+    }
+  }
+
+  private static ByteBuffer inflateWhole(FileChannel channel, int size) throws IOException {
+    ByteBuffer compressed = ByteBuffer.allocate(size);
+    while (compressed.hasRemaining() && channel.read(compressed, compressed.position()) > 0) {
+    }
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array(), 0,
+        compressed.position()));
+    try {
+      byte[] out = new byte[4 * size];
+      int n = 0;
+      int read;
+      while ((read = in.read(out, n, out.length - n)) > 0) {
+        n += read;
+        if (n == out.length) {
+          out = Arrays.copyOf(out, 2 * n);
+        }
+      }
+      return ByteBuffer.wrap(out, 0, n);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static synchronized ExecutorService pool() {
+    if (pool == null) {
+      pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+              Thread thread = new Thread(task, "inflate pool");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return pool;
+  }
+}
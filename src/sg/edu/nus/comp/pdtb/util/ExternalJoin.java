@@ -0,0 +1,426 @@
+package sg.edu.nus.comp.pdtb.util;
+
+/**
+ *
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Out-of-core join of gold and predicted relation lines on the key of a {@link SpanIndex}, the
+ * document and the connective span. Lines are buffered up to a memory budget, sorted by key and
+ * spilled to a run file whenever the buffer is full. The runs are then merged in one sequential
+ * pass that hands every key, with its gold and its predicted lines, to a {@link Group}. Only the
+ * buffer and one block per run are held in memory, so gold sets far larger than the heap can be
+ * scored.
+ * 
+ * Keys are handed out in order of document and key span, and the lines of each side of a key in
+ * the order they were added. When every line fits in the budget nothing is written to disk.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class ExternalJoin implements Closeable {
+
+  /**
+   * Receives the lines of one key, as byte view strings like a {@link MappedLineReader.Line}.
+   */
+  public interface Group {
+    void join(List<String> gold, List<String> predicted) throws IOException;
+  }
+
+  /**
+   * Runs merged at once, more are first merged into longer runs.
+   */
+  private static final int FAN_IN = 64;
+  private static final int BLOCK = 1 << 16;
+  /**
+   * Estimated heap bytes of a buffered line besides its key and its bytes.
+   */
+  private static final int RECORD_OVERHEAD = 96;
+  private static final byte GOLD = 0;
+  private static final byte PREDICTED = 1;
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  private static final Comparator<Record> ORDER = new Comparator<Record>() {
+    @Override
+    public int compare(Record a, Record b) {
+      int c = compareKeys(a, b);
+      if (c != 0) {
+        return c;
+      }
+      if (a.side != b.side) {
+        return a.side - b.side;
+      }
+      return a.seq < b.seq ? -1 : a.seq == b.seq ? 0 : 1;
+    }
+  };
+
+  private final long budget;
+  private final File dir;
+  private final List<Run> runs = new ArrayList<Run>();
+  private final List<Record> buffer = new ArrayList<Record>();
+  private long buffered;
+  private long seq;
+
+  /**
+   * @param budget the bytes of lines buffered before they are spilled to a run
+   * @param dir the directory of the run files, null for the default temporary-file directory
+   */
+  public ExternalJoin(long budget, File dir) {
+    this.budget = budget;
+    this.dir = dir;
+  }
+
+  /**
+   * Adds a gold line, keyed on the document and key span of <code>rel</code> parsed from it.
+   */
+  public void addGold(SpanIndex.Relation rel, CharSequence line) throws IOException {
+    add(GOLD, rel, line);
+  }
+
+  /**
+   * Adds a predicted line, keyed on the document and key span of <code>rel</code> parsed from it.
+   */
+  public void addPredicted(SpanIndex.Relation rel, CharSequence line) throws IOException {
+    add(PREDICTED, rel, line);
+  }
+
+  /**
+   * @return the number of runs spilled to disk so far
+   */
+  public int runs() {
+    return runs.size();
+  }
+
+  /**
+   * Hands every key to <code>group</code>, in key order. Lines added afterwards start a new join.
+   */
+  public void join(Group group) throws IOException {
+    Collections.sort(buffer, ORDER);
+    if (runs.isEmpty()) {
+      emit(new MemorySource(buffer.iterator()), group);
+    } else {
+      spill();
+      while (runs.size() > FAN_IN) {
+        List<Run> merged = new ArrayList<Run>(runs.subList(0, FAN_IN));
+        runs.subList(0, FAN_IN).clear();
+        try {
+          runs.add(write(merge(open(merged))));
+        } finally {
+          delete(merged);
+        }
+      }
+      List<Run> merged = new ArrayList<Run>(runs);
+      runs.clear();
+      try {
+        emit(merge(open(merged)), group);
+      } finally {
+        delete(merged);
+      }
+    }
+    buffer.clear();
+    buffered = 0;
+  }
+
+  /**
+   * Deletes the run files left by a join that failed or never ran.
+   */
+  @Override
+  public void close() {
+    delete(runs);
+    runs.clear();
+    buffer.clear();
+  }
+
+  private void add(byte side, SpanIndex.Relation rel, CharSequence line) throws IOException {
+    byte[] bytes = new byte[line.length()];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) line.charAt(i);
+    }
+    Record record = new Record(rel.doc(), rel.packedSpan(0), side, seq++, bytes);
+    buffer.add(record);
+    buffered += RECORD_OVERHEAD + 4 * record.key.length + bytes.length;
+    if (buffered >= budget) {
+      Collections.sort(buffer, ORDER);
+      spill();
+    }
+  }
+
+  /**
+   * Writes the sorted buffer to a new run.
+   */
+  private void spill() throws IOException {
+    runs.add(write(new MemorySource(buffer.iterator())));
+    buffer.clear();
+    buffered = 0;
+  }
+
+  private Run write(Source source) throws IOException {
+    Run run = new Run(File.createTempFile("jnle-join", ".run", dir));
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run.file), BLOCK));
+      for (Record r = source.next(); r != null; r = source.next()) {
+        r.writeTo(out);
+        ++run.records;
+      }
+    } catch (IOException e) {
+      run.file.delete();
+      throw e;
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+      source.close();
+    }
+    return run;
+  }
+
+  private static List<Source> open(List<Run> runs) throws IOException {
+    List<Source> sources = new ArrayList<Source>();
+    try {
+      for (Run run : runs) {
+        sources.add(new RunSource(run));
+      }
+    } catch (IOException e) {
+      for (Source source : sources) {
+        source.close();
+      }
+      throw e;
+    }
+    return sources;
+  }
+
+  /**
+   * Merges sorted sources into one, by taking the least head each time.
+   */
+  private static Source merge(final List<Source> sources) throws IOException {
+    final PriorityQueue<Source> heads = new PriorityQueue<Source>(sources.size(),
+        new Comparator<Source>() {
+          @Override
+          public int compare(Source a, Source b) {
+            return ORDER.compare(a.head, b.head);
+          }
+        });
+    for (Source source : sources) {
+      if (source.advance()) {
+        heads.add(source);
+      }
+    }
+    return new Source() {
+      @Override
+      Record next() throws IOException {
+        Source least = heads.poll();
+        if (least == null) {
+          return null;
+        }
+        Record record = least.head;
+        if (least.advance()) {
+          heads.add(least);
+        }
+        return record;
+      }
+
+      @Override
+      void close() throws IOException {
+        for (Source source : sources) {
+          source.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Hands the records of a sorted source to <code>group</code> one key at a time.
+   */
+  private static void emit(Source source, Group group) throws IOException {
+    List<String> gold = new ArrayList<String>();
+    List<String> predicted = new ArrayList<String>();
+    Record key = null;
+    try {
+      for (Record r = source.next(); r != null; r = source.next()) {
+        if (key != null && compareKeys(key, r) != 0) {
+          group.join(gold, predicted);
+          gold.clear();
+          predicted.clear();
+        }
+        key = r;
+        (r.side == GOLD ? gold : predicted).add(new String(r.line, ISO_8859_1));
+      }
+      if (key != null) {
+        group.join(gold, predicted);
+      }
+    } finally {
+      source.close();
+    }
+  }
+
+  private static void delete(List<Run> runs) {
+    for (Run run : runs) {
+      run.file.delete();
+    }
+  }
+
+  private static int compareKeys(Record a, Record b) {
+    if (a.doc != b.doc) {
+      return a.doc < b.doc ? -1 : 1;
+    }
+    int n = Math.min(a.key.length, b.key.length);
+    for (int i = 0; i < n; ++i) {
+      if (a.key[i] != b.key[i]) {
+        return a.key[i] < b.key[i] ? -1 : 1;
+      }
+    }
+    return a.key.length - b.key.length;
+  }
+
+  /**
+   * One line with its key, as buffered and as written to a run.
+   */
+  private static final class Record {
+
+    final int doc;
+    final int[] key;
+    final byte side;
+    final long seq;
+    final byte[] line;
+
+    Record(int doc, int[] key, byte side, long seq, byte[] line) {
+      this.doc = doc;
+      this.key = key;
+      this.side = side;
+      this.seq = seq;
+      this.line = line;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(doc);
+      out.writeInt(key.length);
+      for (int value : key) {
+        out.writeInt(value);
+      }
+      out.writeByte(side);
+      out.writeLong(seq);
+      out.writeInt(line.length);
+      out.write(line);
+    }
+
+    static Record readFrom(DataInputStream in) throws IOException {
+      int doc = in.readInt();
+      int[] key = new int[in.readInt()];
+      for (int i = 0; i < key.length; ++i) {
+        key[i] = in.readInt();
+      }
+      byte side = in.readByte();
+      long seq = in.readLong();
+      byte[] line = new byte[in.readInt()];
+      in.readFully(line);
+      return new Record(doc, key, side, seq, line);
+    }
+  }
+
+  private static final class Run {
+
+    final File file;
+    long records;
+
+    Run(File file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * Sorted records, read one at a time.
+   */
+  private abstract static class Source {
+
+    Record head;
+
+    /**
+     * @return the next record, or null when there are no more
+     */
+    abstract Record next() throws IOException;
+
+    abstract void close() throws IOException;
+
+    /**
+     * Moves {@link #head} to the next record.
+     * 
+     * @return false when there are no more
+     */
+    boolean advance() throws IOException {
+      head = next();
+      return head != null;
+    }
+  }
+
+  private static final class MemorySource extends Source {
+
+    private final Iterator<Record> records;
+
+    MemorySource(Iterator<Record> records) {
+      this.records = records;
+    }
+
+    @Override
+    Record next() {
+      return records.hasNext() ? records.next() : null;
+    }
+
+    @Override
+    void close() {}
+  }
+
+  private static final class RunSource extends Source {
+
+    private final DataInputStream in;
+    private long remaining;
+
+    RunSource(Run run) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file), BLOCK));
+      remaining = run.records;
+    }
+
+    @Override
+    Record next() throws IOException {
+      if (remaining == 0) {
+        return null;
+      }
+      --remaining;
+      return Record.readFrom(in);
+    }
+
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns labels, such as sense names, to dense <code>int</code> ids in order of first appearance.
+ * Labels are looked up straight from a {@link TokenCursor}, so only a label seen for the first
+ * time allocates.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class LabelTable {
+
+  /**
+   * The most labels a <code>long</code> set of {@link #bit(int) label bits} can hold.
+   */
+  public static final int MAX_SET_LABELS = 64;
+
+  private String[] labels = new String[16];
+  private int[] hashes = new int[16];
+  private int size;
+  /**
+   * Open-addressing slots holding <code>id + 1</code>, 0 when empty.
+   */
+  private int[] slots = new int[32];
+
+  /**
+   * Returns the id of the label under the cursor, adding it if it is new.
+   */
+  public int intern(TokenCursor label) {
+    int hash = hash(label);
+    int slot = slotOf(label, hash);
+    if (slots[slot] != 0) {
+      return slots[slot] - 1;
+    }
+    if (size == labels.length) {
+      labels = Arrays.copyOf(labels, 2 * size);
+      hashes = Arrays.copyOf(hashes, 2 * size);
+    }
+    int id = size++;
+    labels[id] = label.toRawString();
+    hashes[id] = hash;
+    slots[slot] = id + 1;
+    if (2 * size > slots.length) {
+      rehash(2 * slots.length);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the id of the label, adding it if it is new.
+   */
+  public int intern(CharSequence label) {
+    return intern(new TokenCursor().span(label, 0, label.length()));
+  }
+
+  /**
+   * Returns the id of the label under the cursor, or -1 if it was never added.
+   */
+  public int get(TokenCursor label) {
+    int slot = slotOf(label, hash(label));
+    return slots[slot] - 1;
+  }
+
+  /**
+   * The label of an id, as its chars appeared in the line it was added from.
+   */
+  public String label(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException("No label with id " + id);
+    }
+    return labels[id];
+  }
+
+  /**
+   * The number of labels, ids are <code>[0, size)</code>.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The bit of a label id in a <code>long</code> set of labels, 0 for -1. Ids must be below
+   * {@link #MAX_SET_LABELS}.
+   */
+  public static long bit(int id) {
+    return id < 0 ? 0 : 1L << id;
+  }
+
+  /**
+   * Writes the labels in id order, see {@link #readFrom(ByteBuffer)}.
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size);
+    for (int id = 0; id < size; ++id) {
+      BinaryColumns.writeString(out, labels[id]);
+    }
+  }
+
+  /**
+   * Reads a table written by {@link #writeTo(DataOutput)}, with the same ids.
+   */
+  public static LabelTable readFrom(ByteBuffer in) {
+    LabelTable table = new LabelTable();
+    int size = in.getInt();
+    for (int id = 0; id < size; ++id) {
+      table.intern(BinaryColumns.readString(in));
+    }
+    return table;
+  }
+
+  private int slotOf(TokenCursor label, int hash) {
+    int mask = slots.length - 1;
+    int i = hash & mask;
+    while (slots[i] != 0) {
+      int id = slots[i] - 1;
+      if (hashes[id] == hash && label.contentEquals(labels[id])) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < size; ++id) {
+      int i = hashes[id] & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = id + 1;
+    }
+  }
+
+  private static int hash(TokenCursor label) {
+    int h = 0;
+    for (int i = 0; i < label.length(); ++i) {
+      h = 31 * h + label.charAt(i);
+    }
+    // spread the low bits, the slot index is taken from them
+    return h ^ (h >>> 16);
+  }
+}
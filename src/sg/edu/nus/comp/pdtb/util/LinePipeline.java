@@ -0,0 +1,275 @@
+package sg.edu.nus.comp.pdtb.util;
+
+/**
+ *
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the lines of a file on a thread of its own while they are scored on others. The reader
+ * copies lines into batches of {@link #BATCH_LINES} and hands them to the scoring workers through
+ * a bounded ring. A scored batch goes back to the reader to be filled again, so the batches are
+ * allocated once. Each batch is scored into a result of its own, and the results are returned in
+ * file order. Reading and scoring overlap, so a large file is scored at about the pace of the
+ * slower of the two.
+ * 
+ * Small files are read and scored on the calling thread, in the same batches.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class LinePipeline {
+
+  public static final int BATCH_LINES = 4096;
+  /**
+   * Batches the reader fills ahead of the workers.
+   */
+  private static final int RING = 8;
+  /**
+   * Files up to this size are not worth a thread.
+   */
+  private static final long SMALL_FILE = 1L << 20;
+  private static final Batch END = new Batch();
+
+  /**
+   * Scores one batch. With more than one worker, batches are scored concurrently.
+   */
+  public interface Task<R> {
+    R score(Batch batch) throws IOException;
+  }
+
+  private LinePipeline() {}
+
+  /**
+   * Scores the lines of a file with <code>workers</code> workers, the calling thread being one.
+   * 
+   * @return the result of every batch, in file order
+   * @throws IOException if reading or any batch failed
+   */
+  public static <R> List<R> run(File file, int workers, Task<R> task) throws IOException {
+    if (CompressedInput.resolve(file).length() <= SMALL_FILE) {
+      return runInline(file, task);
+    }
+    return new Run<R>(file, Math.max(workers, 1), task).run();
+  }
+
+  private static <R> List<R> runInline(File file, Task<R> task) throws IOException {
+    List<R> results = new ArrayList<R>();
+    MappedLineReader reader = new MappedLineReader(file);
+    try {
+      Batch batch = new Batch();
+      long first = 0;
+      while (batch.fill(reader, results.size(), first)) {
+        first += batch.size;
+        results.add(task.score(batch));
+      }
+    } finally {
+      reader.close();
+    }
+    return results;
+  }
+
+  /**
+   * Consecutive lines of a file, copied into one reusable array.
+   */
+  public static final class Batch {
+
+    private int sequence;
+    private long first;
+    private int size;
+    private byte[] bytes = new byte[1 << 16];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int[] ends = new int[BATCH_LINES];
+    private final MappedLineReader.Line line = new MappedLineReader.Line();
+
+    /**
+     * @return the index in the file of the first line
+     */
+    public long first() {
+      return first;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * The <code>i</code>-th line of the batch, as {@link MappedLineReader#readLine()} returns it.
+     * The view is reused and only valid until the following call.
+     */
+    public CharSequence line(int i) {
+      line.reset(buffer, i == 0 ? 0 : ends[i - 1], ends[i]);
+      return line;
+    }
+
+    /**
+     * Fills the batch with the next lines of <code>reader</code>.
+     * 
+     * @return false if there were none
+     */
+    boolean fill(MappedLineReader reader, int sequence, long first) throws IOException {
+      this.sequence = sequence;
+      this.first = first;
+      size = 0;
+      int length = 0;
+      MappedLineReader.Line next;
+      while (size < BATCH_LINES && (next = reader.readLine()) != null) {
+        if (length + next.length() > bytes.length) {
+          bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + next.length()));
+          buffer = ByteBuffer.wrap(bytes);
+        }
+        next.copyTo(bytes, length);
+        length += next.length();
+        ends[size++] = length;
+      }
+      return size > 0;
+    }
+  }
+
+  /**
+   * One pipelined run: a reader thread, <code>workers - 1</code> worker threads and the caller.
+   */
+  private static final class Run<R> {
+
+    private final File file;
+    private final int workers;
+    private final Task<R> task;
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> full;
+    private final List<R> results = new ArrayList<R>();
+    private volatile Throwable failure;
+
+    Run(File file, int workers, Task<R> task) {
+      this.file = file;
+      this.workers = workers;
+      this.task = task;
+      free = new ArrayBlockingQueue<Batch>(RING + workers);
+      full = new ArrayBlockingQueue<Batch>(RING + 2 * workers);
+      for (int i = 0; i < RING + workers; ++i) {
+        free.add(new Batch());
+      }
+    }
+
+    List<R> run() throws IOException {
+      Thread reader = start(new Runnable() {
+        @Override
+        public void run() {
+          read();
+        }
+      }, "read ");
+      Thread[] threads = new Thread[workers - 1];
+      for (int i = 0; i < threads.length; ++i) {
+        threads[i] = start(new Runnable() {
+          @Override
+          public void run() {
+            score();
+          }
+        }, "score ");
+      }
+      score();
+      try {
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        reader.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while scoring " + file);
+      }
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      return results;
+    }
+
+    private Thread start(Runnable runnable, String name) {
+      Thread thread = new Thread(runnable, name + file.getName());
+      thread.setDaemon(true);
+      thread.start();
+      return thread;
+    }
+
+    private void read() {
+      MappedLineReader reader = null;
+      try {
+        reader = new MappedLineReader(file);
+        int sequence = 0;
+        long first = 0;
+        // stop early once a worker failed, the result is thrown away
+        while (failure == null) {
+          Batch batch = free.take();
+          if (!batch.fill(reader, sequence, first)) {
+            break;
+          }
+          first += batch.size;
+          ++sequence;
+          full.put(batch);
+        }
+      } catch (InterruptedException e) {
+        failure = new InterruptedIOException("Interrupted while reading " + file);
+      } catch (Throwable e) {
+        failure = e;
+      } finally {
+        try {
+          if (reader != null) {
+            reader.close();
+          }
+        } catch (IOException e) {
+          failure = e;
+        }
+        for (int i = 0; i < workers; ++i) {
+          full.add(END);
+        }
+      }
+    }
+
+    private void score() {
+      try {
+        Batch batch;
+        while ((batch = full.take()) != END) {
+          if (failure == null) {
+            try {
+              R result = task.score(batch);
+              synchronized (results) {
+                while (results.size() <= batch.sequence) {
+                  results.add(null);
+                }
+                results.set(batch.sequence, result);
+              }
+            } catch (Throwable e) {
+              failure = e;
+            }
+          }
+          free.add(batch);
+        }
+      } catch (InterruptedException e) {
+        failure = new InterruptedIOException("Interrupted while scoring " + file);
+      }
+    }
+  }
+}
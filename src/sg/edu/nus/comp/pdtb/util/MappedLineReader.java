@@ -0,0 +1,376 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Line reader over a memory-mapped UTF-8 file. Lines are found by scanning the mapped bytes for
+ * <code>\n</code>, <code>\r</code> or <code>\r\n</code>, the same terminators as
+ * <code>BufferedReader.readLine</code>, and are returned as a {@link Line} view of the bytes, so
+ * reading a line neither decodes nor allocates.
+ * 
+ * Large files are mapped in windows that move forward with the reader, small ones are read whole.
+ * A gzip or {@link BlockGzip} file, recognised by its first bytes, is read through a
+ * {@link CompressedInput} instead, and a file that does not exist is looked for with a
+ * compression suffix, see {@link CompressedInput#resolve(File)}.
+ * 
+ * {@link #countLines(File)} counts the lines of a file without finding them one by one, so a pair
+ * of line-aligned files can be checked before either is read. A compressed file is inflated to
+ * count its lines, so such a check costs as much as reading it.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class MappedLineReader implements Closeable {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  private static final long WINDOW = 1L << 28;
+  /**
+   * Files up to this size are read into the heap, which is cheaper than mapping them.
+   */
+  private static final long SMALL_FILE = 1L << 16;
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long LF_BYTES = 0x0A0A0A0A0A0A0A0AL;
+  private static final long CR_BYTES = 0x0D0D0D0D0D0D0D0DL;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long size;
+  /**
+   * The inflated bytes of a compressed file, null when the file is mapped.
+   */
+  private final CompressedInput input;
+  private final Line line = new Line();
+
+  private ByteBuffer window;
+  private long windowStart;
+  private long next;
+  private boolean skipLf;
+
+  public MappedLineReader(File file) throws IOException {
+    file = CompressedInput.resolve(file);
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    try {
+      this.size = channel.size();
+      this.input = CompressedInput.open(file, channel);
+    } catch (IOException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  public MappedLineReader(String file) throws IOException {
+    this(new File(file));
+  }
+
+  /**
+   * Reads the next line. The returned view is reused and only valid until the following call.
+   * 
+   * @return the line without its terminator, or null at the end of the file
+   * @throws IOException
+   */
+  public Line readLine() throws IOException {
+    if (skipLf) {
+      skipLf = false;
+      if (available(next) && window.get((int) (next - windowStart)) == '\n') {
+        ++next;
+      }
+    }
+    if (!available(next)) {
+      return null;
+    }
+    int from = (int) (next - windowStart);
+    int limit = window.limit();
+    int i = from;
+    while (true) {
+      while (i < limit) {
+        byte b = window.get(i);
+        if (b == '\n' || b == '\r') {
+          break;
+        }
+        ++i;
+      }
+      if (i < limit) {
+        break;
+      }
+      // the line runs past the window, so continue in one starting at the line
+      long scanned = i - from;
+      if (!extend(next, scanned)) {
+        break;
+      }
+      from = 0;
+      i = (int) scanned;
+      limit = window.limit();
+    }
+    line.reset(window, from, i);
+    if (i < limit) {
+      skipLf = window.get(i) == '\r';
+      next = windowStart + i + 1;
+    } else {
+      next = windowStart + i;
+    }
+    return line;
+  }
+
+  /**
+   * Counts the lines {@link #readLine()} returns for a file. The terminators are counted eight
+   * bytes at a time in a <code>long</code>, with <code>\r\n</code> counted once.
+   */
+  public static long countLines(File file) throws IOException {
+    MappedLineReader reader = new MappedLineReader(file);
+    try {
+      return reader.countRemaining();
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Counts the lines from the current position to the end of the file, moving there.
+   */
+  private long countRemaining() throws IOException {
+    long lines = 0;
+    // the last byte seen, -1 before any, and whether a line is still open
+    int last = -1;
+    boolean open = false;
+    if (skipLf) {
+      last = '\r';
+    }
+    while (available(next)) {
+      ByteBuffer bytes = window.duplicate().order(ByteOrder.BIG_ENDIAN);
+      int i = (int) (next - windowStart);
+      int limit = bytes.limit();
+      for (; i + 8 <= limit; i += 8) {
+        long word = bytes.getLong(i);
+        long lf = zeroBytes(word ^ LF_BYTES);
+        long cr = zeroBytes(word ^ CR_BYTES);
+        // a \r\n pair is a single terminator, also when it straddles two words
+        long pairs = (cr >>> 8) & lf;
+        lines += Long.bitCount(lf) + Long.bitCount(cr) - Long.bitCount(pairs);
+        if (last == '\r' && (word >>> 56) == '\n') {
+          --lines;
+        }
+        last = (int) (word & 0xFF);
+        open = last != '\n' && last != '\r';
+      }
+      for (; i < limit; ++i) {
+        int b = bytes.get(i) & 0xFF;
+        if (b == '\r' || (b == '\n' && last != '\r')) {
+          ++lines;
+        }
+        last = b;
+        open = last != '\n' && last != '\r';
+      }
+      next = windowStart + limit;
+    }
+    skipLf = false;
+    return open ? lines + 1 : lines;
+  }
+
+  /**
+   * The high bit of every zero byte of <code>word</code>, exactly, unlike the usual test for
+   * whether there is one.
+   */
+  private static long zeroBytes(long word) {
+    return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+  }
+
+  /**
+   * @return the size of the file in bytes, compressed if it is
+   */
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    if (input != null) {
+      input.close();
+    }
+    file.close();
+  }
+
+  /**
+   * Makes the window hold <code>position</code>, which is at most one past the window.
+   * 
+   * @return false at the end of the file
+   */
+  private boolean available(long position) throws IOException {
+    if (input == null) {
+      if (position >= size) {
+        return false;
+      }
+      ensureMapped(position);
+      return true;
+    }
+    while (window == null || position >= windowStart + window.limit()) {
+      ByteBuffer chunk = input.next();
+      if (chunk == null) {
+        return false;
+      }
+      windowStart = window == null ? 0 : windowStart + window.limit();
+      window = chunk;
+    }
+    return true;
+  }
+
+  /**
+   * Replaces the window, whose end a line starting at <code>position</code> runs past, by one
+   * starting at the line and going further.
+   * 
+   * @return false if the file ends with the window
+   */
+  private boolean extend(long position, long scanned) throws IOException {
+    if (input == null) {
+      if (windowStart + window.limit() >= size) {
+        return false;
+      }
+      map(position, Math.max(WINDOW, 2 * scanned));
+      return true;
+    }
+    ByteBuffer chunk = input.next();
+    if (chunk == null) {
+      return false;
+    }
+    ByteBuffer tail = window.duplicate();
+    tail.position((int) (position - windowStart));
+    ByteBuffer joined = ByteBuffer.allocate(tail.remaining() + chunk.remaining());
+    joined.put(tail).put(chunk).flip();
+    window = joined;
+    windowStart = position;
+    return true;
+  }
+
+  private void ensureMapped(long position) throws IOException {
+    if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+      map(position, WINDOW);
+    }
+  }
+
+  private void map(long position, long length) throws IOException {
+    length = Math.min(length, size - position);
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Line at byte " + position + " is longer than " + Integer.MAX_VALUE
+          + " bytes");
+    }
+    if (size <= SMALL_FILE) {
+      window = ByteBuffer.allocate((int) length);
+      while (window.hasRemaining()) {
+        if (channel.read(window, position + window.position()) < 0) {
+          throw new EOFException("File shrank while reading it");
+        }
+      }
+      window.flip();
+    } else {
+      window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+    windowStart = position;
+  }
+
+  /**
+   * The bytes of <code>s</code> in UTF-8, one char per byte, as they appear in a {@link Line}. Use
+   * it for constants such as the <code>£</code> sense separator that are compared with lines.
+   */
+  public static String byteView(String s) {
+    return new String(s.getBytes(UTF_8), ISO_8859_1);
+  }
+
+  /**
+   * The string whose {@link #byteView(String) byte view} is <code>s</code>, such as a label
+   * interned from a {@link Line}, decoded from UTF-8 for printing.
+   */
+  public static String fromByteView(String s) {
+    return new String(s.getBytes(ISO_8859_1), UTF_8);
+  }
+
+  /**
+   * A line of the file seen as raw bytes, one char per byte. For well formed UTF-8 two lines, or
+   * two ranges of them, are equal exactly when their decoded text is equal, so labels can be
+   * compared without decoding. Only {@link #toString()} decodes.
+   */
+  public static final class Line implements CharSequence {
+
+    private ByteBuffer bytes;
+    private int start;
+    private int end;
+
+    Line() {}
+
+    private Line(ByteBuffer bytes, int start, int end) {
+      reset(bytes, start, end);
+    }
+
+    void reset(ByteBuffer bytes, int start, int end) {
+      this.bytes = bytes;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    /**
+     * Copies the bytes of the line into <code>dst</code> from <code>at</code>.
+     */
+    void copyTo(byte[] dst, int at) {
+      if (bytes.hasArray()) {
+        System.arraycopy(bytes.array(), bytes.arrayOffset() + start, dst, at, end - start);
+      } else {
+        for (int i = start; i < end; ++i) {
+          dst[at++] = bytes.get(i);
+        }
+      }
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public Line subSequence(int from, int to) {
+      return new Line(bytes, start + from, start + to);
+    }
+
+    /**
+     * @return the line decoded from UTF-8
+     */
+    @Override
+    public String toString() {
+      byte[] b = new byte[end - start];
+      for (int i = 0; i < b.length; ++i) {
+        b[i] = bytes.get(start + i);
+      }
+      return new String(b, UTF_8);
+    }
+  }
+}
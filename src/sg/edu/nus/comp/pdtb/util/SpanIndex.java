@@ -0,0 +1,427 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Open-addressing index of pipe-delimited relations such as <code>00:39..42|9..35|43..239</code>,
+ * keyed on the document and the connective span in the first column. Every span column is parsed
+ * once into packed <code>int</code> offsets, so comparing spans is comparing ints, and the whole
+ * index is a handful of flat arrays.
+ * 
+ * A span is stored in a shared pool as <code>[n, start1, end1, ..., startN, endN]</code>, which
+ * also covers discontinuous spans like <code>39..42;195..239</code>.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class SpanIndex {
+
+  private final int columns;
+  private int size;
+  private int[] docs = new int[16];
+  private int[] spanAt;
+  private int[] pool = new int[64];
+  private int poolSize;
+  private int[] slots = new int[32];
+
+  /**
+   * @param columns the number of leading span columns of each relation, including the key
+   */
+  public SpanIndex(int columns) {
+    this.columns = columns;
+    this.spanAt = new int[docs.length * columns];
+  }
+
+  /**
+   * Adds a relation. A relation with the same key replaces the earlier one and takes over its id.
+   * 
+   * @return the id of the relation, ids are assigned in insertion order of the keys starting from 0
+   */
+  public int put(Relation rel) {
+    if ((size + 1) * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    int slot = slotOf(rel);
+    int id = slots[slot] - 1;
+    if (id < 0) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        spanAt = Arrays.copyOf(spanAt, size * 2 * columns);
+      }
+      id = size++;
+      slots[slot] = id + 1;
+    }
+    docs[id] = rel.doc;
+    for (int c = 0; c < columns; ++c) {
+      int from = rel.at[c];
+      int len = 1 + 2 * rel.pool[from];
+      if (poolSize + len > pool.length) {
+        pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + len));
+      }
+      System.arraycopy(rel.pool, from, pool, poolSize, len);
+      spanAt[id * columns + c] = poolSize;
+      poolSize += len;
+    }
+    return id;
+  }
+
+  /**
+   * @return the id of the relation with the same document and key span, or -1
+   */
+  public int get(Relation rel) {
+    int id = slots[slotOf(rel)] - 1;
+    return id;
+  }
+
+  /**
+   * @return true if the <code>column</code> span of relation <code>id</code> equals the one of
+   *         <code>rel</code>
+   */
+  public boolean spanEquals(int id, int column, Relation rel) {
+    return equal(pool, spanAt[id * columns + column], rel.pool, rel.at[column]);
+  }
+
+  /**
+   * Tests whether the <code>column</code> spans of relation <code>id</code> and of
+   * <code>rel</code> share at least one offset. Ranges are half open, <code>39..42</code> covers
+   * 39, 40 and 41. The ranges of both spans are swept in order of their endpoints, so a
+   * discontinuous span costs linear time instead of comparing every pair of ranges.
+   */
+  public boolean spanOverlaps(int id, int column, Relation rel) {
+    int[] a = pool;
+    int atA = spanAt[id * columns + column];
+    int[] b = rel.pool;
+    int atB = rel.at[column];
+    if (!isSorted(a, atA)) {
+      a = sortedCopy(a, atA);
+      atA = 0;
+    }
+    if (!isSorted(b, atB)) {
+      b = sortedCopy(b, atB);
+      atB = 0;
+    }
+    int i = atA + 1, endA = atA + 1 + 2 * a[atA];
+    int j = atB + 1, endB = atB + 1 + 2 * b[atB];
+    while (i < endA && j < endB) {
+      if (a[i + 1] <= b[j]) {
+        i += 2;
+      } else if (b[j + 1] <= a[i]) {
+        j += 2;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the document of relation <code>id</code>
+   */
+  public int doc(int id) {
+    return docs[id];
+  }
+
+  /**
+   * @return the number of distinct keys added
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes every relation, keeping the arrays for the next ones.
+   */
+  public void clear() {
+    size = 0;
+    poolSize = 0;
+    Arrays.fill(slots, 0);
+  }
+
+  /**
+   * Writes the index as it is laid out in memory, so {@link #readFrom(ByteBuffer)} restores it
+   * without parsing or hashing.
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(columns);
+    out.writeInt(size);
+    out.writeInt(poolSize);
+    BinaryColumns.writeInts(out, docs, size);
+    BinaryColumns.writeInts(out, spanAt, size * columns);
+    BinaryColumns.writeInts(out, pool, poolSize);
+    BinaryColumns.writeInts(out, slots, slots.length);
+  }
+
+  /**
+   * Reads an index written by {@link #writeTo(DataOutput)}. More relations can be added to it.
+   */
+  public static SpanIndex readFrom(ByteBuffer in) {
+    SpanIndex index = new SpanIndex(in.getInt());
+    index.size = in.getInt();
+    index.poolSize = in.getInt();
+    index.docs = BinaryColumns.readInts(in, 16);
+    index.spanAt = BinaryColumns.readInts(in, index.docs.length * index.columns);
+    index.pool = BinaryColumns.readInts(in, 64);
+    index.slots = BinaryColumns.readInts(in, 0);
+    return index;
+  }
+
+  private int slotOf(Relation rel) {
+    int mask = slots.length - 1;
+    int i = hash(rel.doc, rel.pool, rel.at[0]) & mask;
+    while (slots[i] != 0) {
+      int id = slots[i] - 1;
+      if (docs[id] == rel.doc && equal(pool, spanAt[id * columns], rel.pool, rel.at[0])) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    int[] old = slots;
+    slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int s = 0; s < old.length; ++s) {
+      if (old[s] != 0) {
+        int id = old[s] - 1;
+        int i = hash(docs[id], pool, spanAt[id * columns]) & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = old[s];
+      }
+    }
+  }
+
+  /**
+   * Hashes the document with the start and end offsets of the key span.
+   */
+  private static int hash(int doc, int[] pool, int at) {
+    int n = pool[at];
+    int start = n == 0 ? -1 : pool[at + 1];
+    int end = n == 0 ? -1 : pool[at + 2 * n];
+    int h = doc * 0x9E3779B1 + start;
+    h = h * 0x9E3779B1 + end;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * True if the ranges of the span are ordered by both start and end, as they are written in the
+   * PDTB pipe format.
+   */
+  private static boolean isSorted(int[] pool, int at) {
+    int end = at + 1 + 2 * pool[at];
+    for (int i = at + 3; i < end; i += 2) {
+      if (pool[i] < pool[i - 2] || pool[i + 1] < pool[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies a span with its ranges sorted by start, merging overlapping ranges so the ends are
+   * sorted as well.
+   */
+  private static int[] sortedCopy(int[] pool, int at) {
+    int n = pool[at];
+    long[] ranges = new long[n];
+    for (int r = 0; r < n; ++r) {
+      ranges[r] = ((long) pool[at + 1 + 2 * r] << 32) | (pool[at + 2 + 2 * r] & 0xFFFFFFFFL);
+    }
+    Arrays.sort(ranges);
+    int[] copy = new int[1 + 2 * n];
+    int m = 0;
+    for (int r = 0; r < n; ++r) {
+      int start = (int) (ranges[r] >>> 32);
+      int end = (int) ranges[r];
+      if (m > 0 && start <= copy[2 * m]) {
+        copy[2 * m] = Math.max(copy[2 * m], end);
+      } else {
+        copy[1 + 2 * m] = start;
+        copy[2 + 2 * m] = end;
+        ++m;
+      }
+    }
+    copy[0] = m;
+    return copy;
+  }
+
+  private static boolean equal(int[] a, int atA, int[] b, int atB) {
+    int len = 1 + 2 * a[atA];
+    if (a[atA] != b[atB]) {
+      return false;
+    }
+    for (int i = 1; i < len; ++i) {
+      if (a[atA + i] != b[atB + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * One parsed relation line, reused from line to line. The optional <code>doc:</code> prefix of
+   * the key column becomes {@link #doc()}, the leading span columns are parsed into the packed form
+   * and the boundaries of every column are kept, so the remaining columns can be read in place.
+   */
+  public static final class Relation {
+
+    private final int columns;
+    private int doc;
+    private int[] pool = new int[16];
+    private int poolSize;
+    private final int[] at;
+    private int[] bounds = new int[8];
+    private int count;
+
+    public Relation(int columns) {
+      this.columns = columns;
+      this.at = new int[columns];
+    }
+
+    /**
+     * Parses <code>[doc:]span|span|...</code>.
+     * 
+     * @throws IllegalArgumentException if a span column is malformed or missing
+     */
+    public Relation parse(CharSequence line) {
+      int len = line.length();
+      count = 0;
+      int from = 0;
+      for (int i = 0; i <= len; ++i) {
+        if (i == len || line.charAt(i) == '|') {
+          if (2 * count + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+          }
+          bounds[2 * count] = from;
+          bounds[2 * count + 1] = i;
+          ++count;
+          from = i + 1;
+        }
+      }
+      if (count < columns) {
+        throw new IllegalArgumentException("Expected " + columns + " span columns: " + line);
+      }
+      doc = 0;
+      poolSize = 0;
+      int keyFrom = bounds[0];
+      for (int i = bounds[0]; i < bounds[1]; ++i) {
+        if (line.charAt(i) == ':') {
+          doc = parseInt(line, bounds[0], i);
+          keyFrom = i + 1;
+          break;
+        }
+      }
+      for (int c = 0; c < columns; ++c) {
+        at[c] = parseSpan(line, c == 0 ? keyFrom : bounds[2 * c], bounds[2 * c + 1]);
+      }
+      return this;
+    }
+
+    /**
+     * @return the document of the key column, 0 when it has no <code>doc:</code> prefix. It is a
+     *         number, so <code>00:</code> and <code>0:</code> are the same document.
+     */
+    public int doc() {
+      return doc;
+    }
+
+    public void setDoc(int doc) {
+      this.doc = doc;
+    }
+
+    /**
+     * @return the number of columns in the line
+     */
+    public int columnCount() {
+      return count;
+    }
+
+    /**
+     * @return the first offset of the <code>column</code> span as written, -1 when it is empty
+     */
+    public int spanStart(int column) {
+      return pool[at[column]] == 0 ? -1 : pool[at[column] + 1];
+    }
+
+    /**
+     * @return a copy of the packed <code>column</code> span,
+     *         <code>[n, start1, end1, ..., startN, endN]</code>
+     */
+    public int[] packedSpan(int column) {
+      return Arrays.copyOfRange(pool, at[column], at[column] + 1 + 2 * pool[at[column]]);
+    }
+
+    public int columnStart(int column) {
+      return bounds[2 * column];
+    }
+
+    public int columnEnd(int column) {
+      return bounds[2 * column + 1];
+    }
+
+    private int parseSpan(CharSequence line, int from, int to) {
+      int start = poolSize;
+      append(0);
+      int i = from;
+      while (i < to) {
+        int dots = TokenCursor.indexOf(line, "..", i, to);
+        int semi = TokenCursor.indexOf(line, ";", i, to);
+        int end = semi < 0 ? to : semi;
+        if (dots < 0 || dots > end) {
+          throw new IllegalArgumentException("Malformed span: " + line.subSequence(from, to));
+        }
+        append(parseInt(line, i, dots));
+        append(parseInt(line, dots + 2, end));
+        ++pool[start];
+        i = end + 1;
+      }
+      return start;
+    }
+
+    private void append(int value) {
+      if (poolSize == pool.length) {
+        pool = Arrays.copyOf(pool, poolSize * 2);
+      }
+      pool[poolSize++] = value;
+    }
+
+    private static int parseInt(CharSequence line, int from, int to) {
+      if (from == to) {
+        throw new IllegalArgumentException("Malformed span: empty offset");
+      }
+      int value = 0;
+      for (int i = from; i < to; ++i) {
+        int digit = line.charAt(i) - '0';
+        if (digit < 0 || digit > 9) {
+          throw new IllegalArgumentException("Malformed span: "
+              + line.subSequence(from, to));
+        }
+        value = value * 10 + digit;
+      }
+      return value;
+    }
+  }
+}
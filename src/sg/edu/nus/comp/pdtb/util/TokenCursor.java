@@ -0,0 +1,309 @@
+package sg.edu.nus.comp.pdtb.util;
+
+/**
+ *
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * Reusable cursor over one whitespace-delimited token of a line. The token is kept as a char range
+ * of the underlying line, so scanning and comparing labels never allocates.
+ *
+ * Tokens follow the semantics of <code>String.split("\\s+")</code>: whitespace is
+ * <code>[ \t\n\x0B\f\r]</code>, a line starting with whitespace has an empty first token and
+ * trailing whitespace is ignored.
+ *
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public final class TokenCursor {
+
+  private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+      1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private CharSequence line = "";
+  private int limit;
+  private int start;
+  private int end;
+
+  /**
+   * Positions the cursor on the first token of the line.
+   */
+  public TokenCursor first(CharSequence line) {
+    return first(line, 0, line.length());
+  }
+
+  /**
+   * Positions the cursor on the first token of <code>line[from, to)</code>.
+   */
+  public TokenCursor first(CharSequence line, int from, int to) {
+    this.line = line;
+    this.limit = to;
+    start = from;
+    end = from;
+    while (end < to && !isWhitespace(line.charAt(end))) {
+      ++end;
+    }
+    return this;
+  }
+
+  /**
+   * Positions the cursor on the last token of the line.
+   */
+  public TokenCursor last(CharSequence line) {
+    return last(line, 0, line.length());
+  }
+
+  /**
+   * Positions the cursor on the last token of <code>line[from, to)</code>.
+   */
+  public TokenCursor last(CharSequence line, int from, int to) {
+    this.line = line;
+    this.limit = to;
+    end = to;
+    while (end > from && isWhitespace(line.charAt(end - 1))) {
+      --end;
+    }
+    start = end;
+    while (start > from && !isWhitespace(line.charAt(start - 1))) {
+      --start;
+    }
+    return this;
+  }
+
+  /**
+   * Positions the cursor on <code>line[from, to)</code> as a single token, whitespace included.
+   */
+  public TokenCursor span(CharSequence line, int from, int to) {
+    this.line = line;
+    this.limit = to;
+    start = from;
+    end = to;
+    return this;
+  }
+
+  /**
+   * Moves the cursor to the token following the current one. The cursor is empty when there is no
+   * such token.
+   */
+  public TokenCursor next() {
+    int i = end;
+    while (i < limit && isWhitespace(line.charAt(i))) {
+      ++i;
+    }
+    start = i;
+    end = i;
+    while (end < limit && !isWhitespace(line.charAt(end))) {
+      ++end;
+    }
+    return this;
+  }
+
+  /**
+   * Positions the cursor on the <code>index</code>-th field of <code>token</code> split on
+   * <code>sep</code>, with the semantics of <code>String.split</code>: trailing empty fields do not
+   * exist.
+   *
+   * @return true if the field exists
+   */
+  public boolean field(TokenCursor token, String sep, int index) {
+    line = token.line;
+    limit = token.end;
+    int from = token.start;
+    if (indexOf(line, sep, from, limit) < 0) {
+      start = from;
+      end = limit;
+      return index == 0;
+    }
+    int i = 0;
+    start = from;
+    while (true) {
+      int e = indexOf(line, sep, start, limit);
+      end = e < 0 ? limit : e;
+      if (i == index) {
+        break;
+      }
+      if (e < 0) {
+        return false;
+      }
+      start = e + sep.length();
+      ++i;
+    }
+    // the field counts only if it, or a field after it, is non-empty
+    int s = start;
+    while (true) {
+      int e = indexOf(line, sep, s, limit);
+      if ((e < 0 ? limit : e) > s) {
+        return true;
+      }
+      if (e < 0) {
+        return false;
+      }
+      s = e + sep.length();
+    }
+  }
+
+  public int start() {
+    return start;
+  }
+
+  public int end() {
+    return end;
+  }
+
+  public int length() {
+    return end - start;
+  }
+
+  public boolean isEmpty() {
+    return end == start;
+  }
+
+  public char charAt(int index) {
+    return line.charAt(start + index);
+  }
+
+  public boolean contentEquals(TokenCursor other) {
+    int len = end - start;
+    if (len != other.end - other.start) {
+      return false;
+    }
+    for (int i = 0; i < len; ++i) {
+      if (line.charAt(start + i) != other.line.charAt(other.start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean contentEquals(CharSequence s) {
+    int len = end - start;
+    if (len != s.length()) {
+      return false;
+    }
+    for (int i = 0; i < len; ++i) {
+      if (line.charAt(start + i) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the token as a signed decimal integer.
+   *
+   * @throws NumberFormatException if the token is not a valid integer
+   */
+  public int parseInt() {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+      negative = line.charAt(i) == '-';
+      ++i;
+    }
+    if (i == end) {
+      throw new NumberFormatException("For input string: \"" + this + "\"");
+    }
+    long value = 0;
+    for (; i < end; ++i) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("For input string: \"" + this + "\"");
+      }
+      value = value * 10 + digit;
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw new NumberFormatException("For input string: \"" + this + "\"");
+      }
+    }
+    value = negative ? -value : value;
+    if (value > Integer.MAX_VALUE) {
+      throw new NumberFormatException("For input string: \"" + this + "\"");
+    }
+    return (int) value;
+  }
+
+  /**
+   * Parses the token as a decimal number. Plain decimals such as <code>0.0305</code> are parsed in
+   * place and rounded like <code>Double.parseDouble</code>, anything else is handed to it.
+   *
+   * @throws NumberFormatException if the token is not a valid number
+   */
+  public double parseDouble() {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+      negative = line.charAt(i) == '-';
+      ++i;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int fraction = -1;
+    for (; i < end; ++i) {
+      char c = line.charAt(i);
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        ++digits;
+        if (fraction >= 0) {
+          ++fraction;
+        }
+      } else if (c == '.' && fraction < 0) {
+        fraction = 0;
+      } else {
+        break;
+      }
+    }
+    // beyond 15 digits or 10^22 the quotient below is no longer correctly rounded
+    if (i < end || digits == 0 || digits > 15 || fraction > 22) {
+      return Double.parseDouble(toString());
+    }
+    double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+    return negative ? -value : value;
+  }
+
+  /**
+   * Copies the chars of the token into a String as they are, without decoding. For a byte view
+   * line this is the byte view of the token.
+   */
+  public String toRawString() {
+    return new StringBuilder(end - start).append(line, start, end).toString();
+  }
+
+  @Override
+  public String toString() {
+    return line.subSequence(start, end).toString();
+  }
+
+  /**
+   * Same whitespace class as the regex <code>\s</code>.
+   */
+  public static boolean isWhitespace(char c) {
+    return c == ' ' || (c >= '\t' && c <= '\r');
+  }
+
+  /**
+   * Allocation free <code>indexOf</code> of <code>s</code> in <code>line[from, to)</code>.
+   */
+  public static int indexOf(CharSequence line, CharSequence s, int from, int to) {
+    int n = s.length();
+    outer: for (int i = from; i <= to - n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        if (line.charAt(i + j) != s.charAt(j)) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
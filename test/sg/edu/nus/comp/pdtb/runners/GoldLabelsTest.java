@@ -0,0 +1,153 @@
+package sg.edu.nus.comp.pdtb.runners;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import sg.edu.nus.comp.pdtb.util.MappedLineReader;
+
+/**
+ * Checks the gold label parsers of {@link GoldLabels} and the line alignment of prediction files.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class GoldLabelsTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void parsesExplicitSenseAlternatives() throws IOException {
+    GoldLabels gold = GoldLabels.parse(write("exp.hw.test", "conn:But Concession£\n"
+        + "conn:when Synchrony£Cause\n" + "conn:and Conjunction\n"), GoldFormat.EXPLICIT);
+    assertEquals(3, gold.size);
+    assertEquals("Concession", label(gold, gold.first[0]));
+    assertEquals(-1, gold.second(0));
+    assertEquals("Synchrony", label(gold, gold.first[1]));
+    assertEquals("Cause", label(gold, gold.second(1)));
+    assertTrue(gold.matches(1, gold.labels.intern(MappedLineReader.byteView("Cause"))));
+    // a connective without the separator has no gold sense
+    assertTrue(gold.isGold(1));
+    assertFalse(gold.isGold(2));
+    assertEquals(1, gold.unannotated.cardinality());
+  }
+
+  @Test
+  public void parsesNonExplicitSensesBeforeTheComment() throws IOException {
+    GoldLabels gold = GoldLabels.parse(write("implicit.test", "Cause\n" + "Cause Contrast\n"
+        + "EntRel %%% wsj_2300 7\n"), GoldFormat.NON_EXPLICIT);
+    assertEquals(3, gold.size);
+    assertEquals(-1, gold.second(0));
+    assertEquals("Contrast", label(gold, gold.second(1)));
+    assertEquals("EntRel", label(gold, gold.first[2]));
+    assertEquals(-1, gold.second(2));
+  }
+
+  @Test
+  public void parsesTheLastToken() throws IOException {
+    GoldLabels gold = GoldLabels.parse(write("conn.test", "f1 f2 1\n" + "f1 0\n"),
+        GoldFormat.LAST_TOKEN);
+    assertEquals("1", label(gold, gold.first[0]));
+    assertEquals("0", label(gold, gold.first[1]));
+  }
+
+  @Test
+  public void checksAlignmentOfPlainAndCompressedFiles() throws IOException {
+    GoldLabels gold = GoldLabels.parse(write("conn.test", "a 1\nb 0\nc 1\n"),
+        GoldFormat.LAST_TOKEN);
+    assertEquals(3, gold.checkAligned(write("aligned.out", "1\n0\n1\n")));
+    try {
+      gold.checkAligned(write("short.out", "1\n0\n"));
+      fail("a short file is not aligned");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("has 2 lines"));
+    }
+    // compressed files are checked while they are read, not inflated twice
+    File compressed = gzip("short.gz.out", "1\n0\n");
+    assertEquals(-1, gold.checkAligned(compressed));
+    MappedLineReader reader = gold.openAligned(compressed);
+    try {
+      gold.nextAligned(reader, compressed, 0);
+      gold.nextAligned(reader, compressed, 1);
+      gold.nextAligned(reader, compressed, 2);
+      fail("a short compressed file is not aligned");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("has 2 lines"));
+    } finally {
+      reader.close();
+    }
+    File longer = gzip("long.gz.out", "1\n0\n1\n1\n");
+    reader = gold.openAligned(longer);
+    try {
+      for (int i = 0; i < 3; ++i) {
+        gold.nextAligned(reader, longer, i);
+      }
+      gold.endAligned(reader, longer);
+      fail("a long compressed file is not aligned");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("more lines"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static String label(GoldLabels gold, int id) {
+    return MappedLineReader.fromByteView(gold.labels.label(id));
+  }
+
+  private File write(String name, String text) throws IOException {
+    return write(name, text.getBytes(UTF_8));
+  }
+
+  private File gzip(String name, String text) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream zip = new GZIPOutputStream(bytes);
+    zip.write(text.getBytes(UTF_8));
+    zip.close();
+    return write(name, bytes.toByteArray());
+  }
+
+  private File write(String name, byte[] bytes) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,92 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link BlockGzip} files are gzip files any reader inflates back.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class BlockGzipTest {
+
+  @Test
+  public void roundTripsThroughGzip() throws IOException {
+    Random random = new Random(11);
+    // empty, within one block, and across many blocks, some incompressible
+    for (int length : new int[] {0, 1, 1000, 65280, 65281, 300000}) {
+      byte[] bytes = new byte[length];
+      if (length % 2 == 0) {
+        random.nextBytes(bytes);
+      } else {
+        for (int i = 0; i < length; ++i) {
+          bytes[i] = (byte) ('a' + i % 7);
+        }
+      }
+      byte[] compressed = compress(bytes);
+      assertTrue(BlockGzip.isBlockGzip(compressed, compressed.length));
+      assertArrayEquals("length " + length, bytes, inflate(compressed));
+    }
+  }
+
+  @Test
+  public void tellsPlainGzipApart() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream zip = new GZIPOutputStream(out);
+    zip.write(new byte[100]);
+    zip.close();
+    byte[] gzip = out.toByteArray();
+    assertFalse(BlockGzip.isBlockGzip(gzip, gzip.length));
+    assertFalse(BlockGzip.isBlockGzip(new byte[] {0x1f}, 1));
+  }
+
+  private static byte[] compress(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockGzip.compress(new ByteArrayInputStream(bytes), out);
+    return out.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] compressed) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that an {@link ExternalJoin} spilled to disk joins like one held in memory.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class ExternalJoinTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void spilledJoinMatchesInMemoryJoin() throws IOException {
+    List<String> gold = new ArrayList<String>();
+    List<String> predicted = new ArrayList<String>();
+    Random random = new Random(3);
+    for (int i = 0; i < 3000; ++i) {
+      String key = random.nextInt(30) + ":" + random.nextInt(200) + ".." + (200 + i % 5);
+      gold.add(key + "|" + i + "..1|2..3|gold " + i);
+      if (i % 4 != 0) {
+        predicted.add(key + "|" + i + "..1|2..3|predicted " + i);
+      }
+    }
+    File spills = folder.newFolder();
+    List<String> inMemory = join(gold, predicted, 1L << 30, spills, 0);
+    // a budget of a few lines, so there are more runs than are merged at once
+    List<String> spilled = join(gold, predicted, 2000, spills, 65);
+    assertEquals(inMemory, spilled);
+    assertEquals(0, spills.list().length);
+  }
+
+  @Test
+  public void keysComeInDocumentAndSpanOrder() throws IOException {
+    List<String> gold = new ArrayList<String>();
+    gold.add("2:5..6|0..1|0..1");
+    gold.add("1:7..9|0..1|0..1");
+    gold.add("1:7..8|0..1|0..1");
+    gold.add("10:0..1|0..1|0..1");
+    List<String> predicted = new ArrayList<String>();
+    predicted.add("1:7..8|0..1|0..1|second");
+    predicted.add("1:7..8|0..1|0..1|first");
+    for (long budget : new long[] {1L << 30, 1}) {
+      List<String> groups = join(gold, predicted, budget, folder.newFolder(), 0);
+      assertEquals(4, groups.size());
+      assertEquals("[1:7..8|0..1|0..1] [1:7..8|0..1|0..1|second, 1:7..8|0..1|0..1|first]",
+          groups.get(0));
+      assertEquals("[1:7..9|0..1|0..1] []", groups.get(1));
+      assertEquals("[2:5..6|0..1|0..1] []", groups.get(2));
+      assertEquals("[10:0..1|0..1|0..1] []", groups.get(3));
+    }
+  }
+
+  /**
+   * Joins the lines, one string per key.
+   */
+  private static List<String> join(List<String> gold, List<String> predicted, long budget,
+      File dir, int minRuns) throws IOException {
+    final List<String> groups = new ArrayList<String>();
+    SpanIndex.Relation rel = new SpanIndex.Relation(3);
+    ExternalJoin join = new ExternalJoin(budget, dir);
+    try {
+      for (String line : gold) {
+        join.addGold(rel.parse(line), line);
+      }
+      for (String line : predicted) {
+        join.addPredicted(rel.parse(line), line);
+      }
+      assertTrue(join.runs() + " runs", join.runs() >= minRuns);
+      join.join(new ExternalJoin.Group() {
+        @Override
+        public void join(List<String> gold, List<String> predicted) {
+          groups.add(gold + " " + predicted);
+        }
+      });
+    } finally {
+      join.close();
+    }
+    return groups;
+  }
+}
@@ -0,0 +1,176 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the lines of {@link MappedLineReader} and its word-at-a-time line count.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class MappedLineReaderTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsLinesWithEveryTerminator() throws IOException {
+    File file = write("a\nbb\r\nccc\rdddd\n\n\r\r\nlast");
+    List<String> lines = readAll(file);
+    String[] expected = {"a", "bb", "ccc", "dddd", "", "", "", "last"};
+    assertEquals(expected.length, lines.size());
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], lines.get(i));
+    }
+    assertEquals(expected.length, MappedLineReader.countLines(file));
+  }
+
+  @Test
+  public void countsCrLfSplitAcrossWords() throws IOException {
+    // a \r\n at every offset, so that some pairs straddle two 8-byte words
+    for (int pad = 0; pad < 24; ++pad) {
+      StringBuilder text = new StringBuilder();
+      for (int line = 0; line < 40; ++line) {
+        for (int i = 0; i < (pad + line) % 17; ++i) {
+          text.append('x');
+        }
+        text.append("\r\n");
+      }
+      File file = write(text.toString());
+      assertEquals("pad " + pad, 40, MappedLineReader.countLines(file));
+      assertEquals("pad " + pad, 40, readAll(file).size());
+    }
+  }
+
+  @Test
+  public void countsLikeReadLine() throws IOException {
+    Random random = new Random(7);
+    char[] alphabet = {'a', 'b', ' ', '\r', '\n', 'é'};
+    for (int round = 0; round < 200; ++round) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(200);
+      for (int i = 0; i < length; ++i) {
+        text.append(alphabet[random.nextInt(alphabet.length)]);
+      }
+      File file = write(text.toString());
+      assertEquals(text.toString(), readAll(file).size(), MappedLineReader.countLines(file));
+    }
+  }
+
+  @Test
+  public void readsAndCountsCompressedFiles() throws IOException {
+    // large enough to be inflated ahead of the reader in several chunks
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 200000; ++i) {
+      text.append(Long.toHexString(i * 0x9E3779B97F4A7C15L)).append(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    byte[] bytes = text.toString().getBytes(UTF_8);
+    for (byte[] compressed : new byte[][] {gzip(bytes), blockGzip(bytes)}) {
+      File file = write(folder.newFile(), compressed);
+      assertEquals(200000, MappedLineReader.countLines(file));
+      List<String> lines = readAll(file);
+      assertEquals(200000, lines.size());
+      assertEquals(Long.toHexString(199999 * 0x9E3779B97F4A7C15L), lines.get(199999));
+    }
+  }
+
+  @Test
+  public void resolvesCompressedNames() throws IOException {
+    write(new File(folder.getRoot(), "conn.hw.out.gz"), gzip("a\nb\n".getBytes(UTF_8)));
+    assertEquals(2, MappedLineReader.countLines(new File(folder.getRoot(), "conn.hw.out")));
+  }
+
+  @Test
+  public void decodesLinesAsUtf8() throws IOException {
+    MappedLineReader reader = new MappedLineReader(write("Contrasté£Cause\n"));
+    try {
+      MappedLineReader.Line line = reader.readLine();
+      assertEquals("Contrasté£Cause", line.toString());
+      assertEquals(MappedLineReader.byteView("Contrasté£Cause"), new TokenCursor().first(
+          line).toRawString());
+      assertEquals("Contrasté£Cause", MappedLineReader.fromByteView(MappedLineReader
+          .byteView("Contrasté£Cause")));
+      assertNull(reader.readLine());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private File write(String text) throws IOException {
+    return write(folder.newFile(), text.getBytes(UTF_8));
+  }
+
+  private File write(File file, byte[] bytes) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream zip = new GZIPOutputStream(out);
+    zip.write(bytes);
+    zip.close();
+    return out.toByteArray();
+  }
+
+  static byte[] blockGzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockGzip.compress(new ByteArrayInputStream(bytes), out);
+    return out.toByteArray();
+  }
+
+  private static List<String> readAll(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    MappedLineReader reader = new MappedLineReader(file);
+    try {
+      MappedLineReader.Line line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line.toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,140 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Checks the keys, ids and spans of {@link SpanIndex}.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class SpanIndexTest {
+
+  private final SpanIndex.Relation rel = new SpanIndex.Relation(3);
+
+  @Test
+  public void findsRelationsByDocumentAndKeySpan() {
+    SpanIndex index = new SpanIndex(3);
+    assertEquals(0, index.put(rel.parse("00:39..42|9..35|43..239")));
+    assertEquals(1, index.put(rel.parse("01:39..42|9..35|43..239")));
+    assertEquals(2, index.put(rel.parse("00:40..42|9..35|43..239")));
+    assertEquals(3, index.size());
+    assertEquals(0, index.get(rel.parse("00:39..42|1..2|3..4")));
+    assertEquals(1, index.get(rel.parse("01:39..42|1..2|3..4")));
+    assertEquals(-1, index.get(rel.parse("02:39..42|1..2|3..4")));
+    assertEquals(-1, index.get(rel.parse("00:39..43|1..2|3..4")));
+  }
+
+  @Test
+  public void duplicateKeyReplacesTheRelationAndKeepsItsId() {
+    SpanIndex index = new SpanIndex(3);
+    index.put(rel.parse("00:39..42|9..35|43..239"));
+    index.put(rel.parse("00:50..52|9..35|43..239"));
+    assertEquals(0, index.put(rel.parse("00:39..42|1..5|43..239")));
+    assertEquals(2, index.size());
+    rel.parse("00:39..42|1..5|43..239");
+    assertTrue(index.spanEquals(0, 1, rel));
+    assertTrue(index.spanEquals(0, 2, rel));
+    rel.parse("00:39..42|9..35|43..239");
+    assertFalse(index.spanEquals(0, 1, rel));
+  }
+
+  @Test
+  public void documentsAreNumbers() {
+    SpanIndex index = new SpanIndex(3);
+    index.put(rel.parse("00:39..42|9..35|43..239"));
+    // the overall files number documents by the last digits of their WSJ file, as ints
+    assertEquals(0, index.get(rel.parse("0:39..42|9..35|43..239")));
+    assertEquals(0, index.get(rel.parse("39..42|9..35|43..239")));
+    assertEquals(0, rel.parse("00:39..42|9..35|43..239").doc());
+    assertEquals(7, rel.parse("07:39..42|9..35|43..239").doc());
+  }
+
+  @Test
+  public void keepsEveryKeyThroughCollisionsAndRehashing() {
+    SpanIndex index = new SpanIndex(3);
+    int n = 5000;
+    // many documents with the same few spans, and many spans in one document
+    for (int i = 0; i < n; ++i) {
+      assertEquals(i, index.put(rel.parse(key(i) + "|1..2|3..4")));
+    }
+    assertEquals(n, index.size());
+    for (int i = 0; i < n; ++i) {
+      assertEquals(i, index.get(rel.parse(key(i) + "|1..2|3..4")));
+      assertEquals(i % 100, index.doc(i));
+    }
+    assertEquals(-1, index.get(rel.parse("100:0..1|1..2|3..4")));
+  }
+
+  private static String key(int i) {
+    int doc = i % 100;
+    int start = i / 100;
+    return doc + ":" + start + ".." + (start + 3);
+  }
+
+  @Test
+  public void discontinuousSpans() {
+    SpanIndex index = new SpanIndex(3);
+    index.put(rel.parse("00:39..42;195..239|9..35|43..194"));
+    assertEquals(0, index.get(rel.parse("00:39..42;195..239|9..35|43..194")));
+    assertEquals(-1, index.get(rel.parse("00:39..42|9..35|43..194")));
+    assertTrue(index.spanOverlaps(0, 0, rel.parse("00:200..201|0..9|0..43")));
+    assertFalse(index.spanOverlaps(0, 0, rel.parse("00:42..195|0..9|0..43")));
+    assertFalse(index.spanOverlaps(0, 1, rel.parse("00:1..2|35..40|0..43")));
+    assertTrue(index.spanOverlaps(0, 2, rel.parse("00:1..2|0..1|100..101;300..301")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingColumns() {
+    rel.parse("00:39..42|9..35");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedSpans() {
+    rel.parse("00:39.42|9..35|43..239");
+  }
+
+  @Test
+  public void survivesWritingAndReading() throws IOException {
+    SpanIndex index = new SpanIndex(3);
+    for (int i = 0; i < 100; ++i) {
+      index.put(rel.parse(key(i) + "|1..2|3..4"));
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    index.writeTo(out);
+    out.close();
+    SpanIndex read = SpanIndex.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+    assertEquals(100, read.size());
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(i, read.get(rel.parse(key(i) + "|1..2|3..4")));
+    }
+    assertEquals(100, read.put(rel.parse("5:1000..1001|1..2|3..4")));
+  }
+}
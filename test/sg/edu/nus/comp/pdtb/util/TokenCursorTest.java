@@ -0,0 +1,108 @@
+package sg.edu.nus.comp.pdtb.util;
+
+
+/**
+ * 
+ * Copyright (C) 2014 WING, NUS and NUS NLP Group.
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link TokenCursor} against the <code>String.split</code> calls it replaces.
+ * 
+ * @author ilija.ilievski@u.nus.edu
+ *
+ */
+public class TokenCursorTest {
+
+  private static final String[] LINES = {"a", "a b", "a  b\tc", " a b", "a b  ", "\ta\u000Bb\fc\r",
+      "0[0.0857]  1[0.9143]  1", "x", ""};
+
+  @Test
+  public void tokensFollowSplitOnWhitespace() {
+    TokenCursor token = new TokenCursor();
+    for (String line : LINES) {
+      List<String> tokens = new ArrayList<String>();
+      for (token.first(line); !token.isEmpty() || tokens.isEmpty(); token.next()) {
+        tokens.add(token.toString());
+      }
+      String[] expected = line.split("\\s+");
+      assertEquals(line, expected.length, tokens.size());
+      for (int i = 0; i < expected.length; ++i) {
+        assertEquals(line, expected[i], tokens.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void lastIsLastSplitToken() {
+    TokenCursor token = new TokenCursor();
+    for (String line : LINES) {
+      String[] expected = line.split("\\s+");
+      assertEquals(line, expected[expected.length - 1], token.last(line).toString());
+    }
+  }
+
+  @Test
+  public void fieldsFollowSplitOnSeparator() {
+    String[] senses = {"Contrast", "Contrast£Cause", "£Cause", "Contrast£", "Contrast££Cause",
+        "££"};
+    TokenCursor token = new TokenCursor();
+    TokenCursor field = new TokenCursor();
+    for (String sense : senses) {
+      String[] expected = sense.split("£");
+      token.first(sense);
+      for (int i = 0; i < expected.length; ++i) {
+        assertTrue(sense + " " + i, field.field(token, "£", i));
+        assertEquals(sense + " " + i, expected[i], field.toString());
+      }
+      assertFalse(sense, field.field(token, "£", expected.length));
+    }
+  }
+
+  @Test
+  public void parsesNumbersLikeTheJdk() {
+    String[] ints = {"0", "1", "-7", "+7", "2147483647", "-2147483648"};
+    TokenCursor token = new TokenCursor();
+    for (String s : ints) {
+      assertEquals(s, Integer.parseInt(s), token.first(s).parseInt());
+    }
+    String[] doubles = {"0.0857", "0.9143", "1", "0", "1e-05", "3.5E2", "-0.25", "0.1234567890123"};
+    for (String s : doubles) {
+      assertEquals(s, Double.parseDouble(s), token.first(s).parseDouble(), 0);
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void rejectsMalformedInts() {
+    new TokenCursor().first("1x").parseInt();
+  }
+
+  @Test
+  public void comparesContent() {
+    TokenCursor a = new TokenCursor().first("Cause rest");
+    TokenCursor b = new TokenCursor().last("x Cause");
+    assertTrue(a.contentEquals(b));
+    assertTrue(a.contentEquals("Cause"));
+    assertFalse(a.contentEquals("Caus"));
+  }
+}